@@ -0,0 +1,46 @@
+package com.yokior.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Yokior
+ * @description 过期会话归档配置 见 com.yokior.service.chatexpiration.ChatExpirationService
+ * @date 2026/3/10 10:00
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.archive")
+public class ChatArchiveConfig {
+
+    /**
+     * 归档线程数 同一会话总是由同一个线程处理
+     */
+    private Integer workers = 4;
+
+    /**
+     * 每批最多归档的会话数 一批在一个事务中写入数据库
+     */
+    private Integer batchSize = 50;
+
+    /**
+     * 会话在归档期间有新写入时的最大重试次数
+     */
+    private Integer maxRetries = 3;
+
+    /**
+     * 重试间隔（毫秒） 第n次重试等待 n * retryDelayMillis 超过最大重试次数后推迟到下一个过期周期
+     */
+    private Long retryDelayMillis = 1000L;
+
+    /**
+     * 领取后超过该时间（秒）仍未完成归档时放回队列 节点宕机或Redis临时故障后由其他节点接手
+     */
+    private Long claimTimeoutSeconds = 600L;
+
+    /**
+     * 队列为空时检查的间隔（毫秒）
+     */
+    private Long pollIntervalMillis = 1000L;
+}
@@ -0,0 +1,36 @@
+package com.yokior.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Yokior
+ * @description checkpoint本地缓存配置 见 com.yokior.saver.CheckpointNearCache
+ * @date 2026/3/9 15:00
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.checkpoint-cache")
+public class CheckpointCacheConfig {
+
+    /**
+     * 是否启用本地缓存
+     */
+    private Boolean enabled = true;
+
+    /**
+     * 最多缓存的会话数
+     */
+    private Integer maxSize = 1000;
+
+    /**
+     * 写入后的过期时间（秒） 兜底丢失的失效通知
+     */
+    private Long ttlSeconds = 60L;
+
+    /**
+     * 定时输出命中率的间隔（秒） 0表示不输出
+     */
+    private Long statsIntervalSeconds = 300L;
+}
@@ -1,6 +1,7 @@
 package com.yokior.config;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -18,6 +19,10 @@ import java.util.concurrent.TimeUnit;
 public class HandleThreadConfig {
 
 
+    @Autowired
+    private ChatArchiveConfig chatArchiveConfig;
+
+
     @Bean("handleExpireConversation")
     public Executor handleExpireConversation() {
         return new ThreadPoolExecutor(
@@ -30,4 +35,21 @@ public class HandleThreadConfig {
         );
     }
 
+
+    /**
+     * 归档过期会话的线程 每个线程一直运行 处理分给自己的会话
+     */
+    @Bean("archiveConversation")
+    public Executor archiveConversation() {
+        int workers = Math.max(1, chatArchiveConfig.getWorkers());
+        return new ThreadPoolExecutor(
+                workers,
+                workers,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(workers),
+                new ThreadFactoryBuilder().setNameFormat("archive-conversation-%d").build(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
 }
@@ -30,6 +30,9 @@ public class RedissonConfig {
         // 这样在 redis-cli 或其他工具中直接查看就是明文，不会是乱码。
         config.setCodec(new StringCodec());
 
+        // Lua脚本通过EVALSHA执行 不必每次发送脚本内容
+        config.setUseScriptCache(true);
+
         // 构建单机节点地址
         String address = "redis://" + redisHost + ":" + redisPort;
         
@@ -4,7 +4,7 @@ import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
-import com.yokior.handler.MyJsonbTypeHandler;
+import com.yokior.handler.MyCheckpointTypeHandler;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -28,7 +28,7 @@ public class ChatLog {
     @TableId
     private String conversationId;
 
-    @TableField(typeHandler = MyJsonbTypeHandler.class)
+    @TableField(typeHandler = MyCheckpointTypeHandler.class)
     private LinkedList<Checkpoint> content;
 
     private LocalDateTime createTime;
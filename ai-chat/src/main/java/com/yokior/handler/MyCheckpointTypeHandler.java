@@ -0,0 +1,80 @@
+package com.yokior.handler;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.yokior.saver.CheckpointCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.MappedJdbcTypes;
+import org.apache.ibatis.type.MappedTypes;
+
+import java.io.IOException;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedList;
+
+/**
+ * @author Yokior
+ * @description checkpoint列表与bytea字段的转换 编码与Redis中相同 见 CheckpointCodec
+ *
+ * 原先的jsonb字段需要先转换为bytea 旧数据仍可读取 见 resources/sql/chat_archive.sql
+ *
+ * @date 2026/3/9 10:30
+ */
+@MappedTypes({LinkedList.class})
+@MappedJdbcTypes({JdbcType.BINARY})
+@Slf4j
+public class MyCheckpointTypeHandler extends BaseTypeHandler<LinkedList<Checkpoint>> {
+
+    private final CheckpointCodec checkpointCodec = CheckpointCodec.DEFAULT;
+
+
+    /**
+     * 写数据库时，把checkpoint列表编码为字节
+     */
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, LinkedList<Checkpoint> parameter, JdbcType jdbcType) throws SQLException {
+        try {
+            ps.setBytes(i, checkpointCodec.encodeAll(parameter));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 读数据时，把bytea字段解码为checkpoint列表
+     */
+    @Override
+    public LinkedList<Checkpoint> getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return decode(rs.getBytes(columnName));
+    }
+
+    /**
+     * 读数据时，把bytea字段解码为checkpoint列表
+     */
+    @Override
+    public LinkedList<Checkpoint> getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return decode(rs.getBytes(columnIndex));
+    }
+
+    /**
+     * 读数据时，把bytea字段解码为checkpoint列表
+     */
+    @Override
+    public LinkedList<Checkpoint> getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return decode(cs.getBytes(columnIndex));
+    }
+
+    private LinkedList<Checkpoint> decode(byte[] bytes) {
+        try {
+            return checkpointCodec.decodeAll(bytes);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -2,7 +2,12 @@ package com.yokior.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yokior.entity.ChatLog;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 /**
  * @author Yokior
@@ -11,4 +16,41 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface ChatlogMapper extends BaseMapper<ChatLog> {
+
+    /**
+     * 批量写入聊天记录 已存在时更新内容和更新时间
+     * 同一批中的conversationId不能重复 需要conversation_id上的唯一索引 见 resources/sql/chat_archive.sql
+     */
+    @Insert("""
+            <script>
+            INSERT INTO chat_log (conversation_id, content, create_time, update_time) VALUES
+            <foreach collection="list" item="item" separator=",">
+                (#{item.conversationId}, #{item.content, typeHandler=com.yokior.handler.MyCheckpointTypeHandler},
+                 #{item.createTime}, #{item.updateTime})
+            </foreach>
+            ON CONFLICT (conversation_id) DO UPDATE SET content = EXCLUDED.content, update_time = EXCLUDED.update_time
+            </script>
+            """)
+    int upsertBatch(@Param("list") List<ChatLog> chatLogs);
+
+    /**
+     * 表中只包含该列的唯一索引数 ON CONFLICT (列) 需要至少一个
+     */
+    @Select("""
+            SELECT count(*) FROM pg_index i
+            JOIN pg_class t ON t.oid = i.indrelid
+            JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = i.indkey[0]
+            WHERE t.relname = #{table} AND t.relnamespace = to_regnamespace(current_schema())
+              AND i.indisunique AND i.indnatts = 1 AND i.indpred IS NULL AND a.attname = #{column}
+            """)
+    int countUniqueIndexes(@Param("table") String table, @Param("column") String column);
+
+    /**
+     * 列的类型 列不存在时返回null
+     */
+    @Select("""
+            SELECT data_type FROM information_schema.columns
+            WHERE table_schema = current_schema() AND table_name = #{table} AND column_name = #{column}
+            """)
+    String columnType(@Param("table") String table, @Param("column") String column);
 }
@@ -2,7 +2,11 @@ package com.yokior.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yokior.entity.UserConversation;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * @author Yokior
@@ -11,4 +15,19 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface UserConversationMapper extends BaseMapper<UserConversation> {
+
+    /**
+     * 批量写入会话所属用户 已存在时忽略
+     * 需要conversation_id上的唯一索引 见 resources/sql/chat_archive.sql 启动时检查
+     */
+    @Insert("""
+            <script>
+            INSERT INTO user_conversation (user_id, conversation_id) VALUES
+            <foreach collection="list" item="item" separator=",">
+                (#{item.userId}, #{item.conversationId})
+            </foreach>
+            ON CONFLICT (conversation_id) DO NOTHING
+            </script>
+            """)
+    int insertIgnoreBatch(@Param("list") List<UserConversation> userConversations);
 }
@@ -0,0 +1,228 @@
+package com.yokior.saver;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.serializer.Serializer;
+import com.alibaba.cloud.ai.graph.serializer.check_point.CheckPointSerializer;
+import com.alibaba.cloud.ai.graph.serializer.plain_text.jackson.SpringAIJacksonStateSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.Zstd;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * @author Yokior
+ * @description checkpoint的二进制编码 Redis和数据库共用
+ *
+ * 格式: MAGIC(1) | VERSION(1) | KIND(1) | COMPRESSION(1) | [原始长度(4) 仅压缩时] | 内容
+ * 单个checkpoint的内容是CheckPointSerializer直接写出的字段；列表的内容是数量(4)加依次写出的checkpoint
+ * CheckPointSerializer只用到基本类型的读写，因此直接写到DataOutputStream，不再经过ObjectOutputStream和Base64
+ * 内容小于minCompressSize时不压缩 头部记录了实际的压缩方式 解码时不依赖当前配置
+ * 旧版本的数据是ObjectOutputStream写出的列表（以0xACED开头），decodeAll仍可读取
+ *
+ * @date 2026/3/9 10:00
+ */
+public final class CheckpointCodec {
+
+    private static final byte MAGIC = (byte) 0xC7;
+    private static final byte VERSION = 1;
+
+    private static final byte KIND_SINGLE = 1;
+    private static final byte KIND_LIST = 2;
+
+    private static final int HEADER_SIZE = 4;
+
+    /**
+     * 默认编码 zstd 3级压缩 超过256字节才压缩
+     */
+    public static final CheckpointCodec DEFAULT = new CheckpointCodec(Compression.ZSTD, 3, 256);
+
+    private final Serializer<Checkpoint> checkpointSerializer =
+            new CheckPointSerializer(new SpringAIJacksonStateSerializer(OverAllState::new, new ObjectMapper()));
+
+    private final Compression compression;
+    private final int level;
+    private final int minCompressSize;
+
+    public CheckpointCodec(Compression compression, int level, int minCompressSize) {
+        this.compression = compression;
+        this.level = level;
+        this.minCompressSize = minCompressSize;
+    }
+
+    /**
+     * 编码单个checkpoint
+     */
+    public byte[] encode(Checkpoint checkpoint) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        DataObjectOutput out = new DataObjectOutput(baos);
+        checkpointSerializer.write(checkpoint, out);
+        out.flush();
+        return wrap(KIND_SINGLE, baos.toByteArray());
+    }
+
+    public Checkpoint decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        return checkpointSerializer.read(new DataObjectInput(unwrap(KIND_SINGLE, bytes)));
+    }
+
+    /**
+     * 编码checkpoint列表 整体压缩 相邻checkpoint的消息大量重复 压缩率比单个高
+     */
+    public byte[] encodeAll(List<Checkpoint> checkpoints) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
+        DataObjectOutput out = new DataObjectOutput(baos);
+        out.writeInt(checkpoints.size());
+        for (Checkpoint checkpoint : checkpoints) {
+            checkpointSerializer.write(checkpoint, out);
+        }
+        out.flush();
+        return wrap(KIND_LIST, baos.toByteArray());
+    }
+
+    public LinkedList<Checkpoint> decodeAll(byte[] bytes) throws IOException, ClassNotFoundException {
+        LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+        if (bytes == null || bytes.length == 0) {
+            return checkpoints;
+        }
+        if (isLegacy(bytes)) {
+            return decodeLegacy(bytes);
+        }
+        DataObjectInput in = new DataObjectInput(unwrap(KIND_LIST, bytes));
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            checkpoints.add(checkpointSerializer.read(in));
+        }
+        return checkpoints;
+    }
+
+    private byte[] wrap(byte kind, byte[] content) {
+        Compression used = content.length >= minCompressSize ? compression : Compression.NONE;
+        byte[] payload = used == Compression.ZSTD ? Zstd.compress(content, level) : content;
+        int prefix = used == Compression.NONE ? HEADER_SIZE : HEADER_SIZE + 4;
+
+        byte[] bytes = new byte[prefix + payload.length];
+        bytes[0] = MAGIC;
+        bytes[1] = VERSION;
+        bytes[2] = kind;
+        bytes[3] = used.id;
+        if (used != Compression.NONE) {
+            writeInt(bytes, HEADER_SIZE, content.length);
+        }
+        System.arraycopy(payload, 0, bytes, prefix, payload.length);
+        return bytes;
+    }
+
+    private byte[] unwrap(byte kind, byte[] bytes) throws IOException {
+        if (bytes.length < HEADER_SIZE || bytes[0] != MAGIC) {
+            throw new StreamCorruptedException("不是checkpoint编码的数据");
+        }
+        if (bytes[1] != VERSION) {
+            throw new StreamCorruptedException("不支持的checkpoint编码版本: " + bytes[1]);
+        }
+        if (bytes[2] != kind) {
+            throw new StreamCorruptedException("checkpoint编码类型不匹配: " + bytes[2]);
+        }
+        Compression used = Compression.of(bytes[3]);
+        if (used == Compression.NONE) {
+            byte[] content = new byte[bytes.length - HEADER_SIZE];
+            System.arraycopy(bytes, HEADER_SIZE, content, 0, content.length);
+            return content;
+        }
+        int rawLength = readInt(bytes, HEADER_SIZE);
+        byte[] payload = new byte[bytes.length - HEADER_SIZE - 4];
+        System.arraycopy(bytes, HEADER_SIZE + 4, payload, 0, payload.length);
+        return Zstd.decompress(payload, rawLength);
+    }
+
+    private static boolean isLegacy(byte[] bytes) {
+        return bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+    }
+
+    /**
+     * 旧格式 ObjectOutputStream写出 先写数量再依次写每个checkpoint
+     */
+    private LinkedList<Checkpoint> decodeLegacy(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            int size = ois.readInt();
+            LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+            for (int i = 0; i < size; i++) {
+                checkpoints.add(checkpointSerializer.read(ois));
+            }
+            return checkpoints;
+        }
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+                | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+    public enum Compression {
+
+        NONE((byte) 0),
+
+        ZSTD((byte) 1);
+
+        private final byte id;
+
+        Compression(byte id) {
+            this.id = id;
+        }
+
+        static Compression of(byte id) throws StreamCorruptedException {
+            for (Compression compression : values()) {
+                if (compression.id == id) {
+                    return compression;
+                }
+            }
+            throw new StreamCorruptedException("不支持的压缩方式: " + id);
+        }
+    }
+
+    /**
+     * 只支持基本类型读写的ObjectOutput CheckPointSerializer不会写对象
+     */
+    private static class DataObjectOutput extends DataOutputStream implements ObjectOutput {
+
+        DataObjectOutput(ByteArrayOutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void writeObject(Object obj) throws IOException {
+            throw new NotSerializableException(obj == null ? "null" : obj.getClass().getName());
+        }
+    }
+
+    private static class DataObjectInput extends DataInputStream implements ObjectInput {
+
+        DataObjectInput(byte[] bytes) {
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        public Object readObject() throws IOException {
+            throw new StreamCorruptedException("checkpoint编码中不包含对象");
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.yokior.saver;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.yokior.config.CheckpointCacheConfig;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Yokior
+ * @description 会话最新checkpoint的本地缓存
+ *
+ * 一轮ReAct中框架会对同一个会话多次调用get/put，缓存解码后的最新checkpoint，同一节点上只有第一次get需要读取Redis
+ * put写入Redis后直接更新缓存；按条数LRU淘汰，写入超过ttl后过期
+ * 多个节点之间通过Redis频道失效：MyRedisSaver的写脚本中PUBLISH "节点ID:会话ID"，其他节点收到后删除对应缓存
+ * 从Redis读取或写入Redis的值只在期间该会话没有发生失效时才放入缓存 避免旧值覆盖新的失效
+ * 失效按会话判断：记录最近失效的会话及其失效序号，其他会话的失效不影响缓存；
+ * 记录超出上限被淘汰时保留被淘汰的最大序号，早于它的读写一律视为可能已失效
+ * 命中率按 statsIntervalSeconds 定时输出到日志
+ *
+ * @date 2026/3/9 15:10
+ */
+@Component
+@Slf4j
+public class CheckpointNearCache {
+
+    public static final String INVALIDATE_CHANNEL = "chat:checkpoint:invalidate";
+
+    private final boolean enabled;
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final long statsIntervalSeconds;
+
+    private final RedissonClient redisson;
+
+    // 当前节点ID 忽略自己发出的失效通知
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final LinkedHashMap<String, Entry> lru;
+
+    // 失效序号 读写Redis前取得 之后与会话最近一次失效的序号比较
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // 最近失效的会话 -> 失效序号 按失效顺序排列
+    private final LinkedHashMap<String, Long> recentInvalidations;
+
+    // 已从recentInvalidations淘汰的最大失效序号
+    private long evictedInvalidation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private int listenerId = -1;
+
+    private ScheduledExecutorService statsScheduler;
+
+    // 上次输出统计时的查询次数 没有新的查询时不输出
+    private long lastLookups;
+
+    public CheckpointNearCache(CheckpointCacheConfig config, RedissonClient redisson) {
+        this.enabled = Boolean.TRUE.equals(config.getEnabled()) && config.getMaxSize() > 0;
+        this.maxSize = config.getMaxSize();
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(config.getTtlSeconds());
+        this.statsIntervalSeconds = config.getStatsIntervalSeconds() == null ? 0 : config.getStatsIntervalSeconds();
+        this.redisson = redisson;
+        this.lru = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.recentInvalidations = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > maxSize) {
+                    evictedInvalidation = Math.max(evictedInvalidation, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        if (!enabled) {
+            return;
+        }
+        RTopic topic = redisson.getTopic(INVALIDATE_CHANNEL);
+        listenerId = topic.addListener(String.class, (channel, message) -> {
+            int index = message.indexOf(':');
+            if (index < 0 || message.startsWith(nodeId + ":")) {
+                return;
+            }
+            invalidate(message.substring(index + 1));
+        });
+
+        if (statsIntervalSeconds > 0) {
+            statsScheduler = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("checkpoint-cache-stats-%d").setDaemon(true).build());
+            statsScheduler.scheduleAtFixedRate(this::logStats, statsIntervalSeconds, statsIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void logStats() {
+        long lookups = hits.get() + misses.get();
+        if (lookups != lastLookups) {
+            lastLookups = lookups;
+            log.info("checkpoint缓存 {}", stats());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 写脚本中发布的失效通知 未启用时为空 不发布
+     */
+    public String invalidateMessage(String conversationId) {
+        return enabled ? nodeId + ":" + conversationId : "";
+    }
+
+    /**
+     * 读写Redis前调用 返回值交给 loaded 或 written
+     */
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * 获取缓存的最新checkpoint
+     *
+     * @return 不存在或已过期时返回null
+     */
+    public Checkpoint get(String conversationId) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = lru.get(conversationId);
+            if (entry != null && System.nanoTime() - entry.writeTime < ttlNanos) {
+                hits.incrementAndGet();
+                return copy(entry.checkpoint);
+            }
+            if (entry != null) {
+                lru.remove(conversationId);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 取得stamp之后该会话是否发生过失效 调用时需要持有锁
+     */
+    private boolean invalidatedSince(String conversationId, long stamp) {
+        Long invalidation = recentInvalidations.get(conversationId);
+        return (invalidation != null ? invalidation : evictedInvalidation) > stamp;
+    }
+
+    /**
+     * 放入从Redis读取的checkpoint 读取期间该会话发生过失效或已有put写入的值时不放入
+     */
+    public void loaded(String conversationId, Checkpoint checkpoint, long stamp) {
+        if (!enabled || checkpoint == null) {
+            return;
+        }
+        synchronized (this) {
+            if (!invalidatedSince(conversationId, stamp) && !lru.containsKey(conversationId)) {
+                lru.put(conversationId, new Entry(copy(checkpoint), 0));
+            }
+        }
+    }
+
+    /**
+     * put写入Redis后更新缓存 写入期间该会话发生过失效时不放入
+     *
+     * @param size 写入后列表的长度 同一会话并发put时只保留最新的
+     * @param stamp 写入Redis前调用 stamp 的返回值
+     */
+    public void written(String conversationId, Checkpoint checkpoint, long size, long stamp) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (invalidatedSince(conversationId, stamp)) {
+                // 期间有其他节点写入 缓存中的值也可能已经过时
+                lru.remove(conversationId);
+                return;
+            }
+            Entry entry = lru.get(conversationId);
+            if (entry == null || entry.size < size) {
+                lru.put(conversationId, new Entry(copy(checkpoint), size));
+            }
+        }
+    }
+
+    public void invalidate(String conversationId) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            // 先移除再放入 保证按失效顺序淘汰
+            recentInvalidations.remove(conversationId);
+            recentInvalidations.put(conversationId, invalidations.incrementAndGet());
+            lru.remove(conversationId);
+        }
+    }
+
+    /**
+     * 复制一份 避免调用方修改state影响缓存
+     * state中的Map和集合（消息列表等）逐层复制；集合中的元素（Message等）视为不可变 不复制
+     */
+    private static Checkpoint copy(Checkpoint checkpoint) {
+        return Checkpoint.builder()
+                .id(checkpoint.getId())
+                .state(copyState(checkpoint.getState()))
+                .nodeId(checkpoint.getNodeId())
+                .nextNodeId(checkpoint.getNextNodeId())
+                .build();
+    }
+
+    private static Map<String, Object> copyState(Map<String, Object> state) {
+        Map<String, Object> copied = new HashMap<>(state.size());
+        state.forEach((key, value) -> copied.put(key, copyValue(value)));
+        return copied;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> copied = new LinkedHashMap<>(map.size());
+            map.forEach((key, element) -> copied.put(key, copyValue(element)));
+            return copied;
+        }
+        if (value instanceof Collection<?> collection) {
+            Collection<Object> copied = value instanceof Set<?> ? new LinkedHashSet<>(collection.size()) : new ArrayList<>(collection.size());
+            for (Object element : collection) {
+                copied.add(copyValue(element));
+            }
+            return copied;
+        }
+        return value;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : hits.get() * 1.0 / total;
+    }
+
+    public synchronized String stats() {
+        return String.format("命中 %d, 未命中 %d, 命中率 %.1f%%, 缓存会话 %d",
+                hits.get(), misses.get(), getHitRate() * 100, lru.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (statsScheduler != null) {
+            statsScheduler.shutdownNow();
+        }
+        if (listenerId >= 0) {
+            redisson.getTopic(INVALIDATE_CHANNEL).removeListener(listenerId);
+        }
+        log.info("checkpoint缓存已关闭 {}", stats());
+    }
+
+    private static final class Entry {
+
+        private final Checkpoint checkpoint;
+
+        private final long size;
+
+        private final long writeTime = System.nanoTime();
+
+        private Entry(Checkpoint checkpoint, long size) {
+            this.checkpoint = checkpoint;
+            this.size = size;
+        }
+    }
+}
@@ -1,17 +1,12 @@
 package com.yokior.saver;
 
-import com.alibaba.cloud.ai.graph.OverAllState;
 import com.alibaba.cloud.ai.graph.RunnableConfig;
 import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
 import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
-import com.alibaba.cloud.ai.graph.serializer.Serializer;
-import com.alibaba.cloud.ai.graph.serializer.check_point.CheckPointSerializer;
-import com.alibaba.cloud.ai.graph.serializer.plain_text.jackson.SpringAIJacksonStateSerializer;
 import com.alibaba.fastjson2.JSONObject;
 import com.alibaba.fastjson2.TypeReference;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.conditions.query.LambdaQueryChainWrapper;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yokior.entity.ChatLog;
 import com.yokior.entity.UserConversation;
 import com.yokior.service.chatexpiration.IChatExpirationService;
@@ -19,23 +14,35 @@ import com.yokior.service.chatlog.IChatSaverService;
 import com.yokior.service.userconversation.IUserConversationService;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.redisson.api.RBucket;
-import org.redisson.api.RLock;
-import org.redisson.api.RMap;
+import org.redisson.api.RBatch;
+import org.redisson.api.RDeque;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.io.*;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 /**
  * @author Yokior
- * @description
+ * @description 基于Redis的checkpoint存储
+ *
+ * 每个会话的checkpoint存成一个Redis列表 每个元素是单独编码的一个checkpoint（CheckpointCodec 按字节存储） 最新的在队头
+ * put只向队头推入一个元素，get只读取队头，list是一次范围读取，耗时都不随会话长度增长
+ *
+ * 不使用分布式锁：
+ * 列表中的元素写入后不再修改 get和list直接读取即可得到一致的快照
+ * 写操作都是一个Lua脚本 一次往返完成，同时递增配置中的version
+ * put是追加 与其他追加互不影响；关闭会话时按读取到的version比较后再删除 期间有新的写入则重新归档，不会丢失checkpoint
+ *
+ * get先查本地缓存 CheckpointNearCache，写脚本中同时发布失效通知
+ *
  * @date 2026/1/12 16:22
  */
 @Component
@@ -50,14 +57,109 @@ public class MyRedisSaver implements BaseCheckpointSaver {
     private static final long TTL_SECONDS_BACKUP = TimeUnit.SECONDS.toSeconds(TTL_SECONDS * 2);
 
     public static final String CONVERSATION_CONFIG_PREFIX = "chat:conservation:config:";
-    public static final String CHECKPOINT_PREFIX = "chat:checkpoint:content:";
-    public static final String LOCK_PREFIX = "chat:checkpoint:lock:";
+    public static final String CHECKPOINT_PREFIX = "chat:checkpoint:log:";
+    // 旧版本将整个会话序列化后Base64成一个字符串存储 读取到时迁移为列表
+    private static final String LEGACY_CHECKPOINT_PREFIX = "chat:checkpoint:content:";
 
 
     public static final String USER_ID = "user_id";
+    public static final String VERSION = "version";
 
+    // 关闭会话时 version比较失败的最大重试次数和重试间隔
+    private static final int CLOSE_RETRIES = 3;
+    private static final long CLOSE_RETRY_DELAY_MILLIS = 200;
 
-    private final Serializer<Checkpoint> checkpointSerializer;
+    /**
+     * 推入新的checkpoint 返回推入后的列表长度
+     * KEYS: 列表, 配置 ARGV: 失效通知(可为空), checkpoint, TTL
+     */
+    private static final String PUT_SCRIPT = """
+            local size = redis.call('LPUSH', KEYS[1], ARGV[2])
+            redis.call('HINCRBY', KEYS[2], 'version', 1)
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            redis.call('EXPIRE', KEYS[2], ARGV[3])
+            if ARGV[1] ~= '' then
+                redis.call('PUBLISH', '%s', ARGV[1])
+            end
+            return size
+            """.formatted(CheckpointNearCache.INVALIDATE_CHANNEL);
+
+    /**
+     * 读取最新的checkpoint 返回 {1, checkpoint}；列表不存在时返回旧格式内容 {2, 内容}；
+     * 都不存在说明是新对话 写入userId和TTL后返回空
+     * KEYS: 列表, 配置, 旧格式 ARGV: userId(可为空), TTL
+     */
+    private static final String GET_SCRIPT = """
+            local head = redis.call('LINDEX', KEYS[1], 0)
+            if head then
+                return {'1', head}
+            end
+            local legacy = redis.call('GET', KEYS[3])
+            if legacy then
+                return {'2', legacy}
+            end
+            if ARGV[1] ~= '' then
+                redis.call('HSET', KEYS[2], 'user_id', ARGV[1])
+                redis.call('EXPIRE', KEYS[2], ARGV[2])
+            end
+            return {}
+            """;
+
+    /**
+     * 整体替换checkpoint列表 返回是否写入
+     * KEYS: 列表, 配置, 旧格式 ARGV: 失效通知(可为空), 仅在列表不存在时写入(1/0), TTL, userId(可为空), checkpoint...（最新的在前）
+     */
+    private static final String REPLACE_SCRIPT = """
+            if ARGV[2] == '1' and redis.call('EXISTS', KEYS[1]) == 1 then
+                return 0
+            end
+            redis.call('DEL', KEYS[1])
+            for i = 5, #ARGV do
+                redis.call('RPUSH', KEYS[1], ARGV[i])
+            end
+            if ARGV[4] ~= '' then
+                redis.call('HSET', KEYS[2], 'user_id', ARGV[4])
+            end
+            redis.call('HINCRBY', KEYS[2], 'version', 1)
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            redis.call('EXPIRE', KEYS[2], ARGV[3])
+            redis.call('DEL', KEYS[3])
+            if ARGV[1] ~= '' then
+                redis.call('PUBLISH', '%s', ARGV[1])
+            end
+            return 1
+            """.formatted(CheckpointNearCache.INVALIDATE_CHANNEL);
+
+    /**
+     * 读取会话快照 返回 version, userId, 旧格式内容, checkpoint... 只读 可以在从节点执行
+     * KEYS: 列表, 配置, 旧格式
+     */
+    private static final String SNAPSHOT_SCRIPT = """
+            local result = {redis.call('HGET', KEYS[2], 'version') or '', redis.call('HGET', KEYS[2], 'user_id') or '',
+                    redis.call('GET', KEYS[3]) or ''}
+            for _, entry in ipairs(redis.call('LRANGE', KEYS[1], 0, -1)) do
+                table.insert(result, entry)
+            end
+            return result
+            """;
+
+    /**
+     * version未变化时删除会话 返回是否删除
+     * KEYS: 列表, 配置, 旧格式 ARGV: 失效通知(可为空), 读取快照时的version
+     */
+    private static final String DELETE_SCRIPT = """
+            if (redis.call('HGET', KEYS[2], 'version') or '') ~= ARGV[2] then
+                return 0
+            end
+            redis.call('DEL', KEYS[1], KEYS[2], KEYS[3])
+            if ARGV[1] ~= '' then
+                redis.call('PUBLISH', '%s', ARGV[1])
+            end
+            return 1
+            """.formatted(CheckpointNearCache.INVALIDATE_CHANNEL);
+
+
+    private final CheckpointCodec checkpointCodec = CheckpointCodec.DEFAULT;
 
     @Autowired
     private RedissonClient redisson;
@@ -71,75 +173,69 @@ public class MyRedisSaver implements BaseCheckpointSaver {
     @Autowired
     private IChatExpirationService chatExpirationService;
 
+    @Autowired
+    private CheckpointNearCache nearCache;
 
-    public MyRedisSaver() {
-        this.checkpointSerializer = new CheckPointSerializer(new SpringAIJacksonStateSerializer(OverAllState::new, new ObjectMapper()));
-    }
 
-    private String serializeCheckpoints(List<Checkpoint> checkpoints) throws IOException {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-            oos.writeInt(checkpoints.size());
-            for (Checkpoint checkpoint : checkpoints) {
-                checkpointSerializer.write(checkpoint, oos);
-            }
-            oos.flush();
-            byte[] bytes = baos.toByteArray();
-            return Base64.getEncoder().encodeToString(bytes);
+    private LinkedList<Checkpoint> decodeCheckpoints(List<byte[]> entries) throws IOException, ClassNotFoundException {
+        LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+        for (byte[] entry : entries) {
+            checkpoints.add(checkpointCodec.decode(entry));
         }
+        return checkpoints;
     }
 
-    private LinkedList<Checkpoint> deserializeCheckpoints(String content) throws IOException, ClassNotFoundException {
-        if (content == null || content.isEmpty()) {
-            return new LinkedList<>();
-        }
-        byte[] bytes = Base64.getDecoder().decode(content);
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-             ObjectInputStream ois = new ObjectInputStream(bais)) {
-            int size = ois.readInt();
-            LinkedList<Checkpoint> checkpoints = new LinkedList<>();
-            for (int i = 0; i < size; i++) {
-                checkpoints.add(checkpointSerializer.read(ois));
-            }
-            return checkpoints;
-        }
+    private RDeque<byte[]> getCheckpointLog(String conversationId) {
+        return redisson.getDeque(CHECKPOINT_PREFIX + conversationId, ByteArrayCodec.INSTANCE);
     }
 
+    private List<Object> keys(String conversationId) {
+        return List.of(CHECKPOINT_PREFIX + conversationId, CONVERSATION_CONFIG_PREFIX + conversationId,
+                LEGACY_CHECKPOINT_PREFIX + conversationId);
+    }
+
+    private static byte[] arg(Object value) {
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private <R> R eval(String script, RScript.ReturnType returnType, String conversationId, List<byte[]> args) {
+        return redisson.getScript(ByteArrayCodec.INSTANCE)
+                .eval(RScript.Mode.READ_WRITE, script, returnType, keys(conversationId), args.toArray());
+    }
+
+    /**
+     * 整体写入checkpoint列表 checkpoints中最新的在前
+     *
+     * @param onlyIfAbsent 为true时仅在列表不存在时写入
+     * @param userId 为null时不修改配置中的userId
+     * @return 是否写入
+     */
+    private boolean replaceCheckpoints(String conversationId, List<Checkpoint> checkpoints, boolean onlyIfAbsent, String userId) throws IOException {
+        List<byte[]> args = new ArrayList<>(checkpoints.size() + 4);
+        args.add(arg(nearCache.invalidateMessage(conversationId)));
+        args.add(arg(onlyIfAbsent ? 1 : 0));
+        args.add(arg(TTL_SECONDS_BACKUP));
+        args.add(arg(userId == null ? "" : userId));
+        for (Checkpoint checkpoint : checkpoints) {
+            args.add(checkpointCodec.encode(checkpoint));
+        }
+        Long written = eval(REPLACE_SCRIPT, RScript.ReturnType.INTEGER, conversationId, args);
+        nearCache.invalidate(conversationId);
+        return written == 1;
+    }
 
     @Override
     public Collection<Checkpoint> list(RunnableConfig config) {
         String conversationId = getConversationIdByConfig(config);
         log.debug("{} 调用list", conversationId);
 
-        RLock lock = redisson.getLock(LOCK_PREFIX + conversationId);
         try {
-
-            boolean b = lock.tryLock(1, TimeUnit.SECONDS);
-            if (!b) {
-                return new LinkedList<>();
-            }
-
-            // 获取conversationId对应的RBucket
-            RBucket<String> bucket = redisson.getBucket(CHECKPOINT_PREFIX + conversationId);
-            String content = bucket.get();
-
-            if (content == null) {
-                return new LinkedList<>();
-            }
-
-            return deserializeCheckpoints(content);
-
-
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            // 一次范围读取整个列表 顺序为最新的在前
+            return decodeCheckpoints(getCheckpointLog(conversationId).readAll());
         } catch (IOException e) {
             throw new RuntimeException(e);
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(e);
-        } finally {
-            if (lock.isHeldByCurrentThread()) {
-                lock.unlock();
-            }
         }
     }
 
@@ -150,45 +246,48 @@ public class MyRedisSaver implements BaseCheckpointSaver {
         log.debug("{} 调用get", conversationId);
 
 
-        RLock lock = redisson.getLock(LOCK_PREFIX + conversationId);
-        try {
+        Checkpoint cached = nearCache.get(conversationId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
 
-            boolean b = lock.tryLock(1, TimeUnit.SECONDS);
-            if (!b) {
+        try {
+            // 一次往返读取队头 即最新的checkpoint；没有时检查旧格式；都没有说明是新对话 同时存储配置信息
+            long stamp = nearCache.stamp();
+            String userId = config.metadata("userId").map(Object::toString).orElse("");
+            List<byte[]> result = eval(GET_SCRIPT, RScript.ReturnType.MULTI, conversationId,
+                    List.of(arg(userId), arg(TTL_SECONDS_BACKUP)));
+
+            if (result.isEmpty()) {
+                if (userId.isEmpty()) {
+                    throw new RuntimeException("userId 不能为空！");
+                }
                 return Optional.empty();
             }
 
-            // 获取conversationId对应的RBucket
-            RBucket<String> bucket = redisson.getBucket(CHECKPOINT_PREFIX + conversationId);
-            String content = bucket.get();
-
-            // 如果没有聊天记录说明是新对话 存储配置信息
-            if (content == null) {
-                String userId = getUserIdByConfig(config);
-                RMap<String, String> map = redisson.getMap(CONVERSATION_CONFIG_PREFIX + conversationId);
-                map.put(USER_ID, userId);
-                map.expire(Duration.ofSeconds(TTL_SECONDS_BACKUP));
-
-                return Optional.empty();
+            Checkpoint checkpoint;
+            if (result.get(0)[0] == '1') {
+                checkpoint = checkpointCodec.decode(result.get(1));
+            } else {
+                // 旧格式的会话迁移为列表 列表已存在时不覆盖
+                LinkedList<Checkpoint> checkpoints = checkpointCodec.decodeAll(
+                        Base64.getDecoder().decode(new String(result.get(1), StandardCharsets.UTF_8)));
+                log.info("{} 迁移旧格式的checkpoint", conversationId);
+                boolean written = replaceCheckpoints(conversationId, checkpoints, true, null);
+                if (!written || checkpoints.isEmpty()) {
+                    // 列表已被其他请求写入 或旧格式为空已删除 重新读取
+                    return get(config);
+                }
+                checkpoint = checkpoints.getFirst();
             }
-
-            LinkedList<Checkpoint> checkpoints = deserializeCheckpoints(content);
-
-            return getLast(checkpoints, config);
+            nearCache.loaded(conversationId, checkpoint, stamp);
+            return Optional.of(checkpoint);
 
         } catch (IOException e) {
             throw new RuntimeException(e);
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(e);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            if (lock.isHeldByCurrentThread()) {
-                lock.unlock();
-            }
         }
-
-
     }
 
     @Override
@@ -197,37 +296,18 @@ public class MyRedisSaver implements BaseCheckpointSaver {
         String conversationId = getConversationIdByConfig(config);
         log.debug("{} 调用put", conversationId);
 
-        RLock lock = redisson.getLock(LOCK_PREFIX + conversationId);
-        try {
-
-            boolean b = lock.tryLock(1, TimeUnit.SECONDS);
-            if (!b) {
-                return config;
-            }
-
-            // 获取conversationId对应的RBucket
-            RBucket<String> bucket = redisson.getBucket(CHECKPOINT_PREFIX + conversationId);
-            String content = bucket.get();
-            // 如果是新的对话 投递到队列
-            if (content == null) {
-                chatExpirationService.post(conversationId);
-            }
-            LinkedList<Checkpoint> checkpoints = deserializeCheckpoints(content);
-
+        // 将新的checkpoint推入队头 返回推入后的列表长度
+        long stamp = nearCache.stamp();
+        Long size = eval(PUT_SCRIPT, RScript.ReturnType.INTEGER, conversationId,
+                List.of(arg(nearCache.invalidateMessage(conversationId)), checkpointCodec.encode(checkpoint), arg(TTL_SECONDS_BACKUP)));
+        nearCache.written(conversationId, checkpoint, size, stamp);
 
-            // 将新的checkpoint加入队头 并保存bucket
-            checkpoints.push(checkpoint);
-            bucket.set(serializeCheckpoints(checkpoints), Duration.ofSeconds(TTL_SECONDS_BACKUP));
-
-            return config;
-
-        } finally {
-            if (lock.isHeldByCurrentThread()) {
-                lock.unlock();
-            }
+        // 如果是新的对话 投递到队列
+        if (size == 1) {
+            chatExpirationService.post(conversationId);
         }
 
-
+        return config;
     }
 
     @Override
@@ -243,72 +323,113 @@ public class MyRedisSaver implements BaseCheckpointSaver {
      *
      * @param conversationId
      */
-    @Transactional
     public void closeConversation(String conversationId) {
 
         if (StringUtils.isEmpty(conversationId)) {
             throw new RuntimeException("conversationId 不能为空！");
         }
 
-        RLock lock = redisson.getLock(LOCK_PREFIX + conversationId);
-        try {
-
-            boolean b = lock.tryLock(1, TimeUnit.SECONDS);
-            if (!b) {
-                return;
+        List<String> pending = closeConversations(List.of(conversationId));
+        for (int attempt = 1; attempt < CLOSE_RETRIES && !pending.isEmpty(); attempt++) {
+            try {
+                // 等待正在进行的写入结束
+                Thread.sleep(CLOSE_RETRY_DELAY_MILLIS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
+            pending = closeConversations(pending);
+        }
+        if (!pending.isEmpty()) {
+            // 数据仍在redis中 重新投递到过期队列 下一个周期再归档
+            chatExpirationService.post(conversationId);
+            throw new RuntimeException("会话 " + conversationId + " 写入频繁 关闭失败 已推迟到下一个过期周期！");
+        }
+    }
 
-            // 获取conversationId对应的RBucket
-            RBucket<String> bucket = redisson.getBucket(CHECKPOINT_PREFIX + conversationId);
-            RMap<String, String> map = redisson.getMap(CONVERSATION_CONFIG_PREFIX + conversationId);
-            String content = bucket.get();
-            if (content == null) {
-                return;
-            }
-            String userId = map.get(USER_ID);
-            if (userId == null) {
-                return;
-            }
 
-            // 解析数据
-            LinkedList<Checkpoint> checkpoints = deserializeCheckpoints(content);
-            // 存储到数据库中
-            // 先进行查询 如果存在则进行更新 如果不存在则进行插入
-            ChatLog dbChatLog = chatSaverService.getById(conversationId);
-            if (dbChatLog != null) {
-                dbChatLog.setContent(checkpoints);
-                dbChatLog.setUpdateTime(LocalDateTime.now());
-                chatSaverService.updateById(dbChatLog);
-            } else {
-                // 不存在 则进行插入 需要插入2张表
-                dbChatLog = new ChatLog();
-                dbChatLog.setConversationId(conversationId);
-                dbChatLog.setContent(checkpoints);
-                dbChatLog.setCreateTime(LocalDateTime.now());
-                dbChatLog.setUpdateTime(LocalDateTime.now());
-                chatSaverService.save(dbChatLog);
-
-                UserConversation userConversation = UserConversation.builder()
+    /**
+     * 批量关闭会话
+     * 一次往返读取所有会话的快照，在一个事务中批量写入数据库，再一次往返按version删除redis中的数据
+     *
+     * @param conversationIds 不能重复
+     * @return 归档期间有新的写入、需要重新归档的会话
+     */
+    public List<String> closeConversations(List<String> conversationIds) {
+
+        List<String> retry = new ArrayList<>();
+        if (conversationIds.isEmpty()) {
+            return retry;
+        }
+
+        try {
+            // 一次读取每个会话的version、userId、旧格式内容和整个列表
+            RBatch snapshotBatch = redisson.createBatch();
+            List<RFuture<List<byte[]>>> snapshotFutures = new ArrayList<>(conversationIds.size());
+            for (String conversationId : conversationIds) {
+                snapshotFutures.add(snapshotBatch.getScript(ByteArrayCodec.INSTANCE)
+                        .evalAsync(RScript.Mode.READ_ONLY, SNAPSHOT_SCRIPT, RScript.ReturnType.MULTI, keys(conversationId)));
+            }
+            snapshotBatch.execute();
+
+            List<ChatLog> chatLogs = new ArrayList<>();
+            List<UserConversation> userConversations = new ArrayList<>();
+            Map<String, String> versions = new LinkedHashMap<>();
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = 0; i < conversationIds.size(); i++) {
+                String conversationId = conversationIds.get(i);
+                List<byte[]> snapshot = snapshotFutures.get(i).getNow();
+                String version = new String(snapshot.get(0), StandardCharsets.UTF_8);
+                String userId = new String(snapshot.get(1), StandardCharsets.UTF_8);
+                byte[] legacy = snapshot.get(2);
+                List<byte[]> entries = snapshot.subList(3, snapshot.size());
+                if ((entries.isEmpty() && legacy.length == 0) || userId.isEmpty()) {
+                    continue;
+                }
+
+                // 解析数据 只有旧格式时直接归档旧格式的内容 删除时一起删除 不需要先迁移
+                LinkedList<Checkpoint> checkpoints = entries.isEmpty()
+                        ? checkpointCodec.decodeAll(Base64.getDecoder().decode(legacy))
+                        : decodeCheckpoints(entries);
+                chatLogs.add(ChatLog.builder()
+                        .conversationId(conversationId)
+                        .content(checkpoints)
+                        .createTime(now)
+                        .updateTime(now)
+                        .build());
+                userConversations.add(UserConversation.builder()
                         .conversationId(conversationId)
                         .userId(Long.valueOf(userId))
-                        .build();
-                userConversationService.save(userConversation);
+                        .build());
+                versions.put(conversationId, version);
             }
 
-            // 删除redis中的数据
-            bucket.delete();
-            map.delete();
-
+            // 存储到数据库中 一批一个事务
+            chatSaverService.archiveBatch(chatLogs, userConversations);
+
+            // version未变化才删除redis中的数据 否则说明期间有新的写入 重新归档
+            RBatch deleteBatch = redisson.createBatch();
+            Map<String, RFuture<Long>> deleteFutures = new LinkedHashMap<>();
+            versions.forEach((conversationId, version) -> deleteFutures.put(conversationId,
+                    deleteBatch.getScript(ByteArrayCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE, DELETE_SCRIPT,
+                            RScript.ReturnType.INTEGER, keys(conversationId),
+                            arg(nearCache.invalidateMessage(conversationId)), arg(version))));
+            if (!deleteFutures.isEmpty()) {
+                deleteBatch.execute();
+            }
+            deleteFutures.forEach((conversationId, future) -> {
+                if (future.getNow() == 1) {
+                    nearCache.invalidate(conversationId);
+                } else {
+                    log.info("{} 关闭时有新的写入 重新归档", conversationId);
+                    retry.add(conversationId);
+                }
+            });
+            return retry;
 
         } catch (Exception e) {
             throw new RuntimeException(e);
-        } finally {
-            if (lock.isHeldByCurrentThread()) {
-                lock.unlock();
-            }
         }
-
-
     }
 
 
@@ -342,31 +463,15 @@ public class MyRedisSaver implements BaseCheckpointSaver {
         Long userId = userConversation.getUserId();
 
 
-        RLock lock = redisson.getLock(LOCK_PREFIX + conversationId);
         try {
-
-            boolean b = lock.tryLock(1, TimeUnit.SECONDS);
-            if (!b) {
-                throw new RuntimeException("获取锁失败！");
-            }
-
-            // 获取conversationId对应的RBucket
-            RBucket<String> bucket = redisson.getBucket(CHECKPOINT_PREFIX + conversationId);
-            bucket.set(serializeCheckpoints(checkpoints), Duration.ofSeconds(TTL_SECONDS_BACKUP));
-            // 获取conversationId对应的RMap
-            RMap<String, String> map = redisson.getMap(CONVERSATION_CONFIG_PREFIX + conversationId);
-            map.put(USER_ID, userId.toString());
-            map.expire(Duration.ofSeconds(TTL_SECONDS_BACKUP));
+            // 一次写入checkpoint列表和配置信息
+            replaceCheckpoints(conversationId, checkpoints, false, userId.toString());
 
             // 添加到过期处理延迟队列中
             chatExpirationService.post(conversationId);
 
         } catch (Exception e) {
             throw new RuntimeException(e);
-        } finally {
-            if (lock.isHeldByCurrentThread()) {
-                lock.unlock();
-            }
         }
 
     }
@@ -389,13 +494,4 @@ public class MyRedisSaver implements BaseCheckpointSaver {
     }
 
 
-    private String getUserIdByConfig(RunnableConfig config) {
-        Optional<Object> userId = config.metadata("userId");
-        if (!userId.isPresent()) {
-            throw new RuntimeException("userId 不能为空！");
-        }
-        return userId.get().toString();
-    }
-
-
 }
@@ -159,7 +159,7 @@ public class AiChatService implements IAiChatService {
                 .call()
                 .content();
 
-        List<Float> vector = embeddingService.embedding(embedQuery);
+        float[] vector = embeddingService.embed(embedQuery);
         StringBuilder ask = new StringBuilder();
         ask.append("你是一个Java代码专家，用户进行了提问，下面是根据问题检索向量数据库得到的格式化代码片段知识库，根据知识库问题进行回答，切记不可随意编造！如实回答！").append("\n");
         for (EmbedSearchResult result : milvusService.search(vector, 5)) {
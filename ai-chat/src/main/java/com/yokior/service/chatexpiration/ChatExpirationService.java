@@ -1,26 +1,46 @@
 package com.yokior.service.chatexpiration;
 
+import com.yokior.config.ChatArchiveConfig;
 import com.yokior.saver.MyRedisSaver;
 import com.yokior.service.chatlog.IChatSaverService;
 import com.yokior.service.userconversation.IUserConversationService;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RBlockingQueue;
 import org.redisson.api.RDelayedQueue;
 import org.redisson.api.RQueue;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Yokior
- * @description
+ * @description 过期会话归档
+ *
+ * 分发线程从延迟队列中批量取出到期的会话，按conversationId分给固定的归档线程，同一会话总是由同一个线程按顺序处理
+ * 归档线程一次取出自己队列中积压的会话（最多batchSize个），调用 MyRedisSaver.closeConversations 批量归档
+ * 队列中的元素为 conversationId,到期时间戳[,第几次归档] 用于统计滞后（实际归档时间 - 到期时间）
+ *
+ * 可靠性：
+ * 分发线程从队头取出元素时在同一个原子操作中登记领取时间（有序集合），归档完成（或已重新投递）后才移除登记
+ * 分发线程定时把领取超过claimTimeoutSeconds仍未完成的元素放回队头，节点宕机或Redis临时故障时不需要等到重启
+ * 队列为空时按pollIntervalMillis间隔检查，不使用阻塞读取（BRPOPLPUSH只能从队尾取，会打乱到期顺序）
+ * 归档线程的队列有界，归档跟不上时分发线程阻塞，不再从Redis取出
+ * 归档期间有新写入或关闭失败的会话，间隔retryDelayMillis后重试；超过maxRetries次后重新投递到下一个过期周期，不会丢弃
+ *
  * @date 2026/1/15 16:18
  */
 @Service
@@ -34,43 +54,312 @@ public class ChatExpirationService implements IChatExpirationService {
     @Qualifier("handleExpireConversation")
     private Executor handleExpireConversationExecutor;
 
+    @Autowired
+    @Qualifier("archiveConversation")
+    private Executor archiveConversationExecutor;
+
+    @Autowired
+    private ChatArchiveConfig chatArchiveConfig;
+
     @Autowired
     @Lazy
     private MyRedisSaver myRedisSaver;
 
     private static final String CHAT_EXPIRATION_QUEUE = "chat:expiration:queue";
 
+    // 已取出但还没归档完成的元素 -> 领取时间
+    private static final String CHAT_EXPIRATION_CLAIMS = "chat:expiration:claims";
+
+    // 一次放回队列的超时元素上限
+    private static final int RECLAIM_LIMIT = 1000;
+
+    private static final char DUE_SEPARATOR = ',';
+
+    /**
+     * 从队头按到期顺序取出最多ARGV[1]个元素 同时登记领取时间
+     * KEYS: 队列, 领取记录 ARGV: 数量, 当前时间戳
+     */
+    private static final String CLAIM_SCRIPT = """
+            local result = {}
+            for i = 1, tonumber(ARGV[1]) do
+                local element = redis.call('LPOP', KEYS[1])
+                if not element then
+                    break
+                end
+                redis.call('ZADD', KEYS[2], ARGV[2], element)
+                table.insert(result, element)
+            end
+            return result
+            """;
+
+    /**
+     * 移除已完成元素的领取记录
+     * KEYS: 领取记录 ARGV: 元素...
+     */
+    private static final String COMPLETE_SCRIPT = """
+            return redis.call('ZREM', KEYS[1], unpack(ARGV))
+            """;
+
+    /**
+     * 把领取时间早于ARGV[1]的元素放回队头 优先处理
+     * KEYS: 队列, 领取记录 ARGV: 截止时间戳, 数量上限
+     */
+    private static final String RECLAIM_SCRIPT = """
+            local elements = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+            for i = #elements, 1, -1 do
+                redis.call('LPUSH', KEYS[1], elements[i])
+                redis.call('ZREM', KEYS[2], elements[i])
+            end
+            return #elements
+            """;
+
+    private final AtomicLong archived = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private final AtomicLong archiveNanos = new AtomicLong();
+
+    private List<BlockingQueue<Expiration>> workerQueues;
+
+    // 同时负责把到期的元素转入队列 需要在本节点上创建
+    private RDelayedQueue<String> delayedQueue;
+
     @PostConstruct
     public void start() {
-        handleExpireConversationExecutor.execute(() -> {
-            RBlockingQueue<String> queue = redisson.getBlockingQueue(CHAT_EXPIRATION_QUEUE);
+        int workers = Math.max(1, chatArchiveConfig.getWorkers());
+        int batchSize = Math.max(1, chatArchiveConfig.getBatchSize());
 
-            log.info("handleExpireConversation监听线程已启动");
+        long claimTimeoutMillis = TimeUnit.SECONDS.toMillis(chatArchiveConfig.getClaimTimeoutSeconds());
+        long pollIntervalMillis = Math.max(1, chatArchiveConfig.getPollIntervalMillis());
+        delayedQueue();
 
+        workerQueues = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            BlockingQueue<Expiration> workerQueue = new ArrayBlockingQueue<>(batchSize);
+            workerQueues.add(workerQueue);
+            archiveConversationExecutor.execute(() -> work(workerQueue, batchSize));
+        }
+
+        handleExpireConversationExecutor.execute(() -> {
+            log.info("handleExpireConversation监听线程已启动 归档线程 {} 个", workers);
+
+            long lastReclaim = 0;
             while (true) {
                 try {
-                    // 阻塞等待 直到获取到数据
-                    String conversationId = queue.take();
+                    // 定时放回领取超时的元素 包括其他节点宕机时留下的
+                    long now = System.currentTimeMillis();
+                    if (now - lastReclaim >= claimTimeoutMillis / 2) {
+                        lastReclaim = now;
+                        reclaim(now - claimTimeoutMillis);
+                    }
+
+                    // 从队头取出已经到期的会话 取出的同时登记领取时间 队列为空时稍后再查
+                    List<String> elements = script().eval(RScript.Mode.READ_WRITE, CLAIM_SCRIPT, RScript.ReturnType.MULTI,
+                            List.of(CHAT_EXPIRATION_QUEUE, CHAT_EXPIRATION_CLAIMS), batchSize * workers, now);
+                    if (elements.isEmpty()) {
+                        Thread.sleep(pollIntervalMillis);
+                        continue;
+                    }
 
-                    myRedisSaver.closeConversation(conversationId);
-                    log.info("会话 {} 已过期, 自动关闭", conversationId);
+                    // 归档线程的队列满时阻塞 不再从Redis取出
+                    for (String element : elements) {
+                        Expiration expiration = Expiration.parse(element);
+                        workerQueues.get(Math.floorMod(expiration.conversationId().hashCode(), workers)).put(expiration);
+                    }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     throw new RuntimeException(e);
+                } catch (Exception e) {
+                    log.error("读取过期会话队列失败", e);
                 }
 
             }
         });
     }
 
+    private RScript script() {
+        return redisson.getScript(StringCodec.INSTANCE);
+    }
+
+    private synchronized RDelayedQueue<String> delayedQueue() {
+        if (delayedQueue == null) {
+            RQueue<String> queue = redisson.getQueue(CHAT_EXPIRATION_QUEUE);
+            delayedQueue = redisson.getDelayedQueue(queue);
+        }
+        return delayedQueue;
+    }
 
+    private void reclaim(long claimedBefore) {
+        Long reclaimed = script().eval(RScript.Mode.READ_WRITE, RECLAIM_SCRIPT, RScript.ReturnType.INTEGER,
+                List.of(CHAT_EXPIRATION_QUEUE, CHAT_EXPIRATION_CLAIMS), claimedBefore, RECLAIM_LIMIT);
+        if (reclaimed != null && reclaimed > 0) {
+            log.warn("{} 个会话领取后超时未完成归档 放回队列", reclaimed);
+        }
+    }
+
+    /**
+     * 归档线程 每次取出队列中积压的会话批量归档
+     */
+    private void work(BlockingQueue<Expiration> workerQueue, int batchSize) {
+        List<Expiration> drained = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                drained.clear();
+                drained.add(workerQueue.take());
+                workerQueue.drainTo(drained, batchSize - 1);
+
+                archive(drained);
+
+                // 归档完成或已重新投递后 才移除领取记录
+                script().eval(RScript.Mode.READ_WRITE, COMPLETE_SCRIPT, RScript.ReturnType.INTEGER,
+                        List.of(CHAT_EXPIRATION_CLAIMS), drained.stream().map(Expiration::element).toArray());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // 领取记录仍在 超时后放回队列重新归档
+                log.error("归档 {} 个会话失败", drained.size(), e);
+            }
+        }
+    }
+
+    private void archive(List<Expiration> drained) {
+        // 同一会话重复过期时只归档一次 保留最早的到期时间
+        Map<String, Expiration> batch = new LinkedHashMap<>();
+        for (Expiration expiration : drained) {
+            batch.putIfAbsent(expiration.conversationId(), expiration);
+        }
+
+        long start = System.nanoTime();
+        List<String> retry;
+        try {
+            retry = myRedisSaver.closeConversations(new ArrayList<>(batch.keySet()));
+        } catch (Exception e) {
+            log.error("批量归档 {} 个会话失败 逐个关闭", batch.size(), e);
+            retry = new ArrayList<>();
+            for (String conversationId : batch.keySet()) {
+                try {
+                    retry.addAll(myRedisSaver.closeConversations(List.of(conversationId)));
+                } catch (Exception ex) {
+                    failed.incrementAndGet();
+                    retry.add(conversationId);
+                    log.error("会话 {} 关闭失败", conversationId, ex);
+                }
+            }
+        }
+        archiveNanos.addAndGet(System.nanoTime() - start);
+        batches.incrementAndGet();
+
+        // 有新写入或关闭失败的会话 稍后重试
+        for (String conversationId : retry) {
+            retry(batch.remove(conversationId));
+        }
+
+        long now = System.currentTimeMillis();
+        long batchMaxLag = 0;
+        for (Expiration expiration : batch.values()) {
+            if (expiration.dueAt() > 0) {
+                long lag = Math.max(0, now - expiration.dueAt());
+                totalLagMillis.addAndGet(lag);
+                maxLagMillis.accumulateAndGet(lag, Math::max);
+                batchMaxLag = Math.max(batchMaxLag, lag);
+            }
+        }
+        archived.addAndGet(batch.size());
+        if (!batch.isEmpty()) {
+            log.info("归档 {} 个会话, 耗时 {} ms, 本批最大滞后 {} ms, {}",
+                    batch.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), batchMaxLag, stats());
+        }
+    }
+
+    /**
+     * 间隔一段时间后重试 间隔随次数增加；超过次数后重新投递到下一个过期周期
+     */
+    private void retry(Expiration expiration) {
+        if (expiration.attempt() < chatArchiveConfig.getMaxRetries()) {
+            retried.incrementAndGet();
+            long delay = chatArchiveConfig.getRetryDelayMillis() * expiration.attempt();
+            delayedQueue().offer(expiration.next().encode(), delay, TimeUnit.MILLISECONDS);
+        } else {
+            deferred.incrementAndGet();
+            log.warn("会话 {} 重试 {} 次仍未关闭 推迟到下一个过期周期", expiration.conversationId(), expiration.attempt());
+            post(expiration.conversationId());
+        }
+    }
 
     @Override
     public void post(String conversationId) {
-        RQueue<String> queue = redisson.getQueue(CHAT_EXPIRATION_QUEUE);
-        RDelayedQueue<String> delayedQueue = redisson.getDelayedQueue(queue);
+        // 添加到延迟队列中 附带到期时间用于统计滞后
+        long dueAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(MyRedisSaver.TTL_SECONDS);
+        delayedQueue().offer(conversationId + DUE_SEPARATOR + dueAt, MyRedisSaver.TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 归档统计 吞吐量按归档线程实际耗时计算
+     */
+    @Override
+    public String stats() {
+        long count = archived.get();
+        long lagged = count == 0 ? 0 : totalLagMillis.get() / count;
+        double seconds = archiveNanos.get() / 1e9;
+        double throughput = seconds == 0 ? 0 : count / seconds;
+        int backlog = workerQueues == null ? 0 : workerQueues.stream().mapToInt(BlockingQueue::size).sum();
+        return String.format("累计归档 %d, 批次 %d, 重试 %d, 推迟 %d, 失败 %d, 平均滞后 %d ms, 最大滞后 %d ms, 吞吐 %.1f 个/秒, 待归档 %d",
+                count, batches.get(), retried.get(), deferred.get(), failed.get(), lagged, maxLagMillis.get(), throughput, backlog);
+    }
+
+    public long getArchived() {
+        return archived.get();
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    /**
+     * 到期的会话
+     *
+     * @param element 队列中的原始元素 完成后按它从处理中列表移除
+     * @param dueAt 到期时间戳 旧格式的元素没有到期时间 为0
+     * @param attempt 第几次归档
+     */
+    record Expiration(String element, String conversationId, long dueAt, int attempt) {
+
+        static Expiration parse(String element) {
+            int last = element.lastIndexOf(DUE_SEPARATOR);
+            Long tail = last > 0 ? parseLong(element.substring(last + 1)) : null;
+            if (tail == null) {
+                // 不是到期时间 整个元素都是conversationId
+                return new Expiration(element, element, 0, 1);
+            }
+            int previous = element.lastIndexOf(DUE_SEPARATOR, last - 1);
+            Long dueAt = previous > 0 ? parseLong(element.substring(previous + 1, last)) : null;
+            if (dueAt == null) {
+                return new Expiration(element, element.substring(0, last), tail, 1);
+            }
+            return new Expiration(element, element.substring(0, previous), dueAt, tail.intValue());
+        }
+
+        private static Long parseLong(String value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * 下一次重试 保留原来的到期时间
+         */
+        Expiration next() {
+            return new Expiration(null, conversationId, dueAt, attempt + 1);
+        }
 
-        // 添加到延迟队列中
-        delayedQueue.offer(conversationId, MyRedisSaver.TTL_SECONDS, TimeUnit.SECONDS);
+        String encode() {
+            return conversationId + DUE_SEPARATOR + dueAt + DUE_SEPARATOR + attempt;
+        }
     }
 }
@@ -9,4 +9,9 @@ public interface IChatExpirationService {
 
     void post(String conversationId);
 
+    /**
+     * 归档的滞后和吞吐统计
+     */
+    String stats();
+
 }
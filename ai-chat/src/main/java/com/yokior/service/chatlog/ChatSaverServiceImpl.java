@@ -2,9 +2,17 @@ package com.yokior.service.chatlog;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.yokior.entity.ChatLog;
+import com.yokior.entity.UserConversation;
 import com.yokior.mapper.ChatlogMapper;
+import com.yokior.mapper.UserConversationMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Yokior
@@ -14,4 +22,39 @@ import org.springframework.stereotype.Service;
 @Service
 @Slf4j
 public class ChatSaverServiceImpl extends ServiceImpl<ChatlogMapper, ChatLog> implements IChatSaverService{
+
+    @Autowired
+    private UserConversationMapper userConversationMapper;
+
+    /**
+     * 检查批量归档依赖的表结构 缺少时启动失败 否则每一批归档都会失败并不断重试
+     * 表结构调整见 resources/sql/chat_archive.sql
+     */
+    @PostConstruct
+    public void checkSchema() {
+        List<String> problems = new ArrayList<>();
+        String contentType = baseMapper.columnType("chat_log", "content");
+        if (!"bytea".equals(contentType)) {
+            problems.add("chat_log.content 的类型为 " + contentType + " 需要为 bytea");
+        }
+        for (String table : List.of("chat_log", "user_conversation")) {
+            if (baseMapper.countUniqueIndexes(table, "conversation_id") == 0) {
+                problems.add(table + ".conversation_id 缺少唯一索引");
+            }
+        }
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("归档表结构不满足要求 请先执行 sql/chat_archive.sql: " + String.join("; ", problems));
+        }
+    }
+
+    @Override
+    @Transactional
+    public void archiveBatch(List<ChatLog> chatLogs, List<UserConversation> userConversations) {
+        if (!chatLogs.isEmpty()) {
+            baseMapper.upsertBatch(chatLogs);
+        }
+        if (!userConversations.isEmpty()) {
+            userConversationMapper.insertIgnoreBatch(userConversations);
+        }
+    }
 }
@@ -2,6 +2,9 @@ package com.yokior.service.chatlog;
 
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.yokior.entity.ChatLog;
+import com.yokior.entity.UserConversation;
+
+import java.util.List;
 
 /**
  * @author Yokior
@@ -9,4 +12,13 @@ import com.yokior.entity.ChatLog;
  * @date 2026/1/13 17:16
  */
 public interface IChatSaverService extends IService<ChatLog> {
+
+    /**
+     * 在一个事务中批量归档会话
+     * chat_log已存在时更新内容，user_conversation已存在时忽略
+     *
+     * @param chatLogs conversationId不能重复
+     * @param userConversations 会话所属用户
+     */
+    void archiveBatch(List<ChatLog> chatLogs, List<UserConversation> userConversations);
 }
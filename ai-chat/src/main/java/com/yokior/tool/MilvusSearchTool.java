@@ -3,6 +3,7 @@ package com.yokior.tool;
 import com.yokior.common.CodeFragmentType;
 import com.yokior.common.EmbedSearchResult;
 import com.yokior.common.FilterExpression;
+import com.yokior.common.SearchProjection;
 import com.yokior.service.embedding.IEmbeddingService;
 import com.yokior.service.milvus.IMilvusService;
 import lombok.extern.slf4j.Slf4j;
@@ -12,7 +13,11 @@ import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Yokior
@@ -29,13 +34,31 @@ public class MilvusSearchTool {
     @Autowired
     private IEmbeddingService embeddingService;
 
-    @Tool(name = "检索向量数据库", description = "一个用于检索向量数据库的工具，输入查询内容，返回结果")
+    // 返回的结果数
+    private static final int TOP_K = 5;
+
+    @Tool(name = "检索向量数据库", description = "一个用于检索向量数据库的工具，输入查询内容，返回结果。" +
+            "不确定如何描述时可以同时给出几种不同的说法，会在一次检索中一起查询并合并结果")
     public String search(@ToolParam(description = "需要查询的内容") String query,
+                         @ToolParam(required = false, description = "(可选) 同一问题的其他说法 与查询内容一起检索，结果按分数合并去重") List<String> alternativeQueries,
                          @ToolParam(required = false, description = "(可选) 类型 可选值：" + CodeFragmentType.ALL_TYPE_VALUES) String type,
                          @ToolParam(required = false, description = "(可选) 所属类名") String className,
-                         @ToolParam(required = false, description = "(可选) 所属方法名") String methodName) {
+                         @ToolParam(required = false, description = "(可选) 所属方法名") String methodName,
+                         @ToolParam(required = false, description = "(可选) 所属项目名 指定后只在该项目中检索") String projectName) {
 
-        List<Float> floatList = embeddingService.embedding(query);
+        // 查询内容和其他说法一起向量化
+        List<String> queries = new ArrayList<>();
+        queries.add(query);
+        if (alternativeQueries != null) {
+            for (String alternative : alternativeQueries) {
+                if (StringUtils.isNotBlank(alternative) && !queries.contains(alternative)) {
+                    queries.add(alternative);
+                }
+            }
+        }
+        List<float[]> vectors = queries.size() == 1
+                ? List.of(embeddingService.embed(query))
+                : embeddingService.embedQueries(queries);
 
         FilterExpression filterExpression = FilterExpression.builder()
                 .eq(StringUtils.isNotBlank(type), "type", type)
@@ -45,10 +68,26 @@ public class MilvusSearchTool {
                 .eq(StringUtils.isNotBlank(methodName), "method_name", methodName)
                 .build();
 
-        log.info("查询条件：{}", filterExpression.getExpression());
+        log.info("查询条件：{} 项目：{} 查询数：{}", filterExpression.getExpression(), projectName, queries.size());
+
+        // 所有查询一次请求 先不取代码内容 同一分片只保留最高分
+        Map<Long, EmbedSearchResult> merged = new HashMap<>();
+        for (List<EmbedSearchResult> items : milvusService.searchBatchInProject(projectName, vectors, TOP_K,
+                filterExpression.getExpression(), SearchProjection.LEAN)) {
+            for (EmbedSearchResult item : items) {
+                merged.merge(item.getId(), item, (a, b) -> a.getScore() >= b.getScore() ? a : b);
+            }
+        }
+        List<EmbedSearchResult> items = merged.values().stream()
+                .sorted(Comparator.comparing(EmbedSearchResult::getScore).reversed())
+                .limit(TOP_K)
+                .toList();
+
+        // 只为最终返回的结果查询代码内容
+        milvusService.hydrate(items);
 
         StringBuilder result = new StringBuilder();
-        for (EmbedSearchResult item : milvusService.search(floatList, 5, filterExpression.getExpression())) {
+        for (EmbedSearchResult item : items) {
             result.append("分数：").append(item.getScore()).append("\n")
                     .append("类型：").append(item.getType()).append("\n")
                     .append("所属项目名：").append(item.getProjectName()).append("\n")
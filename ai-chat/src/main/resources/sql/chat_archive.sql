@@ -0,0 +1,22 @@
+-- 过期会话批量归档需要的表结构调整 部署新版本前执行 可以重复执行
+-- 启动时 ChatSaverServiceImpl 会检查以下结构 不满足时启动失败
+
+-- 1. chat_log.content 由jsonb改为bytea 内容为CheckpointCodec编码 旧数据仍可读取
+DO $$
+BEGIN
+    IF (SELECT data_type FROM information_schema.columns
+        WHERE table_schema = current_schema() AND table_name = 'chat_log' AND column_name = 'content') = 'jsonb' THEN
+        ALTER TABLE chat_log ALTER COLUMN content TYPE bytea USING decode(content ->> 'data', 'base64');
+    END IF;
+END $$;
+
+-- 2. 批量写入使用 ON CONFLICT (conversation_id) 需要conversation_id上的唯一索引
+CREATE UNIQUE INDEX IF NOT EXISTS uk_chat_log_conversation_id ON chat_log (conversation_id);
+
+-- 已有重复数据时先去重 只保留一条
+DELETE FROM user_conversation a
+    USING user_conversation b
+WHERE a.conversation_id = b.conversation_id
+  AND a.ctid > b.ctid;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_user_conversation_conversation_id ON user_conversation (conversation_id);
@@ -0,0 +1,170 @@
+package com.yokior.benchmark;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.serializer.Serializer;
+import com.alibaba.cloud.ai.graph.serializer.check_point.CheckPointSerializer;
+import com.alibaba.cloud.ai.graph.serializer.plain_text.jackson.SpringAIJacksonStateSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yokior.saver.CheckpointCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Yokior
+ * @description checkpoint编码对比 模拟50轮对话 每轮 用户提问 -> 调用搜索工具 -> 回答 共3个checkpoint
+ *
+ * legacy*   : 原先的实现 ObjectOutputStream写出整个列表后Base64 存为字符串
+ * encodeAll : CheckpointCodec编码整个列表（写入数据库）
+ * encodeHead: CheckpointCodec编码最新的一个checkpoint（每次put）
+ * 编码后的大小在setUp中打印
+ *
+ * @date 2026/3/9 11:30
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckpointCodecBenchmark {
+
+    private static final int TURNS = 50;
+
+    @Param({"NONE", "ZSTD"})
+    private CheckpointCodec.Compression compression;
+
+    private final Serializer<Checkpoint> serializer =
+            new CheckPointSerializer(new SpringAIJacksonStateSerializer(OverAllState::new, new ObjectMapper()));
+
+    private CheckpointCodec codec;
+    private LinkedList<Checkpoint> checkpoints;
+    private String legacy;
+    private byte[] encoded;
+    private byte[] encodedHead;
+
+    @Setup
+    public void setUp() throws Exception {
+        codec = new CheckpointCodec(compression, 3, 256);
+        checkpoints = conversation();
+        legacy = legacyEncode(checkpoints);
+        encoded = codec.encodeAll(checkpoints);
+        encodedHead = codec.encode(checkpoints.getFirst());
+        System.out.printf("%n%s checkpoint数: %d legacy: %d 字节 列表: %d 字节 最新一个: %d 字节%n",
+                compression, checkpoints.size(), legacy.getBytes(StandardCharsets.UTF_8).length,
+                encoded.length, encodedHead.length);
+    }
+
+    private static LinkedList<Checkpoint> conversation() {
+        LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < TURNS; i++) {
+            messages.add(new UserMessage("第" + i + "个问题：OrderService里创建订单时是怎么扣减库存的？有没有考虑并发？"));
+            checkpoints.push(checkpoint(i + "-model", "model", "tool", messages));
+
+            messages.add(ToolResponseMessage.builder()
+                    .responses(List.of(new ToolResponseMessage.ToolResponse("call-" + i, "milvusSearch",
+                            ("public void deductStock(Long skuId, int count) {"
+                                    + " int updated = stockMapper.deduct(skuId, count); if (updated == 0) {"
+                                    + " throw new BizException(\"库存不足\"); } } ").repeat(4))))
+                    .build());
+            checkpoints.push(checkpoint(i + "-tool", "tool", "model", messages));
+
+            messages.add(new AssistantMessage("创建订单时在同一个事务里调用deductStock，通过UPDATE ... WHERE stock >= count"
+                    + "的条件更新扣减库存，更新行数为0时抛出库存不足，利用数据库行锁保证并发安全。第" + i + "轮。"));
+            checkpoints.push(checkpoint(i + "-answer", "model", "__END__", messages));
+        }
+        return checkpoints;
+    }
+
+    private static Checkpoint checkpoint(String id, String nodeId, String nextNodeId, List<Message> messages) {
+        return Checkpoint.builder()
+                .id(id)
+                .state(Map.of("messages", new ArrayList<>(messages), "input", "OrderService"))
+                .nodeId(nodeId)
+                .nextNodeId(nextNodeId)
+                .build();
+    }
+
+    private String legacyEncode(List<Checkpoint> list) throws IOException {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
+             ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeInt(list.size());
+            for (Checkpoint checkpoint : list) {
+                serializer.write(checkpoint, oos);
+            }
+            oos.flush();
+            return Base64.getEncoder().encodeToString(baos.toByteArray());
+        }
+    }
+
+    private LinkedList<Checkpoint> legacyDecode(String content) throws Exception {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(content)))) {
+            int size = ois.readInt();
+            LinkedList<Checkpoint> list = new LinkedList<>();
+            for (int i = 0; i < size; i++) {
+                list.add(serializer.read(ois));
+            }
+            return list;
+        }
+    }
+
+    @Benchmark
+    public void legacyEncodeAll(Blackhole blackhole) throws Exception {
+        blackhole.consume(legacyEncode(checkpoints));
+    }
+
+    @Benchmark
+    public void legacyDecodeAll(Blackhole blackhole) throws Exception {
+        blackhole.consume(legacyDecode(legacy));
+    }
+
+    @Benchmark
+    public void encodeAll(Blackhole blackhole) throws Exception {
+        blackhole.consume(codec.encodeAll(checkpoints));
+    }
+
+    @Benchmark
+    public void decodeAll(Blackhole blackhole) throws Exception {
+        blackhole.consume(codec.decodeAll(encoded));
+    }
+
+    @Benchmark
+    public void encodeHead(Blackhole blackhole) throws Exception {
+        blackhole.consume(codec.encode(checkpoints.getFirst()));
+    }
+
+    @Benchmark
+    public void decodeHead(Blackhole blackhole) throws Exception {
+        blackhole.consume(codec.decode(encodedHead));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(CheckpointCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -12,7 +12,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Yokior
@@ -62,6 +69,98 @@ public class ChatLogTest {
     }
 
 
+    @Test
+    void testPutAndGet() throws Exception {
+        String conversationId = "test-conversation-id-002";
+        RunnableConfig config = RunnableConfig.builder()
+                .threadId(conversationId)
+                .addMetadata("userId", "666666")
+                .build();
+
+        myRedisSaver.get(config);
+        for (int i = 0; i < 100; i++) {
+            Checkpoint checkpoint = Checkpoint.builder()
+                    .id("checkpoint-" + i)
+                    .state(Map.of("step", i))
+                    .nodeId("node-" + i)
+                    .nextNodeId("node-" + (i + 1))
+                    .build();
+            myRedisSaver.put(config, checkpoint);
+        }
+
+        // 队头是最后put的checkpoint
+        Optional<Checkpoint> head = myRedisSaver.get(config);
+        log.info("最新：{}", head.map(Checkpoint::getId).orElse(null));
+        log.info("长度：{}", myRedisSaver.list(config).size());
+
+        myRedisSaver.closeConversation(conversationId);
+    }
+
+
+    @Test
+    void testConcurrentPut() throws Exception {
+        String conversationId = "test-conversation-id-004";
+        RunnableConfig config = RunnableConfig.builder()
+                .threadId(conversationId)
+                .addMetadata("userId", "666666")
+                .build();
+        myRedisSaver.get(config);
+
+        // 并发写入不会丢失checkpoint
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < 50; i++) {
+                    try {
+                        myRedisSaver.put(config, Checkpoint.builder()
+                                .id("checkpoint-" + thread + "-" + i)
+                                .state(Map.of("step", i))
+                                .nodeId("node")
+                                .nextNodeId("node")
+                                .build());
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        log.info("长度：{}", myRedisSaver.list(config).size());
+        myRedisSaver.closeConversation(conversationId);
+    }
+
+
+    @Test
+    void testCloseConversations() throws Exception {
+        List<String> conversationIds = new ArrayList<>();
+        for (int c = 0; c < 10; c++) {
+            String conversationId = "test-conversation-batch-" + c;
+            conversationIds.add(conversationId);
+            RunnableConfig config = RunnableConfig.builder()
+                    .threadId(conversationId)
+                    .addMetadata("userId", "666666")
+                    .build();
+            myRedisSaver.get(config);
+            for (int i = 0; i < 5; i++) {
+                myRedisSaver.put(config, Checkpoint.builder()
+                        .id("checkpoint-" + i)
+                        .state(Map.of("step", i))
+                        .nodeId("node")
+                        .nextNodeId("node")
+                        .build());
+            }
+        }
+
+        // 一批一个事务写入数据库
+        List<String> retry = myRedisSaver.closeConversations(conversationIds);
+        log.info("需要重新归档：{}", retry);
+        log.info("{}", chatSaverService.getById("test-conversation-batch-0").getContent().size());
+    }
+
+
     @Test
     void testReloadConversation() {
         String conversationId = "test-conversation-id-001";
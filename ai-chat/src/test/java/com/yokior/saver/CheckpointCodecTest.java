@@ -0,0 +1,106 @@
+package com.yokior.saver;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.alibaba.cloud.ai.graph.serializer.Serializer;
+import com.alibaba.cloud.ai.graph.serializer.check_point.CheckPointSerializer;
+import com.alibaba.cloud.ai.graph.serializer.plain_text.jackson.SpringAIJacksonStateSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Yokior
+ * @description 测试checkpoint编码的往返、压缩和旧格式兼容
+ * @date 2026/3/9 11:00
+ */
+public class CheckpointCodecTest {
+
+    private static LinkedList<Checkpoint> conversation(int turns) {
+        LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < turns; i++) {
+            messages.add(new UserMessage("第" + i + "个问题：UserService的save方法做了什么？"));
+            messages.add(new AssistantMessage("save方法先校验参数，再调用mapper插入用户，第" + i + "次回答。"));
+            checkpoints.push(Checkpoint.builder()
+                    .id("checkpoint-" + i)
+                    .state(Map.of("messages", new ArrayList<>(messages)))
+                    .nodeId("model")
+                    .nextNodeId(i % 2 == 0 ? "tool" : "__END__")
+                    .build());
+        }
+        return checkpoints;
+    }
+
+    private static void assertCheckpointEquals(Checkpoint expected, Checkpoint actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getNodeId(), actual.getNodeId());
+        assertEquals(expected.getNextNodeId(), actual.getNextNodeId());
+        List<?> expectedMessages = (List<?>) expected.getState().get("messages");
+        List<?> actualMessages = (List<?>) actual.getState().get("messages");
+        assertEquals(expectedMessages.size(), actualMessages.size());
+        for (int i = 0; i < expectedMessages.size(); i++) {
+            assertEquals(((Message) expectedMessages.get(i)).getText(), ((Message) actualMessages.get(i)).getText());
+        }
+    }
+
+    @Test
+    void testRoundTrip() throws Exception {
+        LinkedList<Checkpoint> checkpoints = conversation(10);
+        for (CheckpointCodec.Compression compression : CheckpointCodec.Compression.values()) {
+            CheckpointCodec codec = new CheckpointCodec(compression, 3, 0);
+
+            Checkpoint head = checkpoints.getFirst();
+            assertCheckpointEquals(head, codec.decode(codec.encode(head)));
+
+            LinkedList<Checkpoint> decoded = codec.decodeAll(codec.encodeAll(checkpoints));
+            assertEquals(checkpoints.size(), decoded.size());
+            for (int i = 0; i < checkpoints.size(); i++) {
+                assertCheckpointEquals(checkpoints.get(i), decoded.get(i));
+            }
+        }
+        assertTrue(CheckpointCodec.DEFAULT.decodeAll(null).isEmpty());
+    }
+
+    @Test
+    void testCompression() throws Exception {
+        LinkedList<Checkpoint> checkpoints = conversation(50);
+        byte[] plain = new CheckpointCodec(CheckpointCodec.Compression.NONE, 0, 0).encodeAll(checkpoints);
+        byte[] zstd = CheckpointCodec.DEFAULT.encodeAll(checkpoints);
+        assertTrue(zstd.length * 5 < plain.length, plain.length + " -> " + zstd.length);
+
+        // 解码不依赖编码时的压缩配置
+        assertEquals(50, new CheckpointCodec(CheckpointCodec.Compression.NONE, 0, 0).decodeAll(zstd).size());
+
+        // 单个和列表的编码不能混用
+        assertThrows(java.io.StreamCorruptedException.class, () -> CheckpointCodec.DEFAULT.decode(zstd));
+    }
+
+    @Test
+    void testLegacy() throws Exception {
+        LinkedList<Checkpoint> checkpoints = conversation(3);
+        Serializer<Checkpoint> serializer = new CheckPointSerializer(new SpringAIJacksonStateSerializer(OverAllState::new, new ObjectMapper()));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeInt(checkpoints.size());
+            for (Checkpoint checkpoint : checkpoints) {
+                serializer.write(checkpoint, oos);
+            }
+        }
+
+        LinkedList<Checkpoint> decoded = CheckpointCodec.DEFAULT.decodeAll(baos.toByteArray());
+        assertEquals(3, decoded.size());
+        assertCheckpointEquals(checkpoints.getFirst(), decoded.getFirst());
+    }
+}
@@ -0,0 +1,134 @@
+package com.yokior.saver;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.yokior.config.CheckpointCacheConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Yokior
+ * @description 测试checkpoint本地缓存的命中、并发写入顺序、失效和淘汰
+ * @date 2026/3/9 16:00
+ */
+public class CheckpointNearCacheTest {
+
+    private static CheckpointNearCache cache(int maxSize, long ttlSeconds) {
+        CheckpointCacheConfig config = new CheckpointCacheConfig();
+        config.setMaxSize(maxSize);
+        config.setTtlSeconds(ttlSeconds);
+        return new CheckpointNearCache(config, null);
+    }
+
+    private static Checkpoint checkpoint(String id) {
+        return Checkpoint.builder()
+                .id(id)
+                .state(Map.of("step", id))
+                .nodeId("model")
+                .nextNodeId("tool")
+                .build();
+    }
+
+    @Test
+    void testHit() {
+        CheckpointNearCache cache = cache(10, 60);
+        assertNull(cache.get("c1"));
+
+        cache.loaded("c1", checkpoint("a"), cache.stamp());
+        assertEquals("a", cache.get("c1").getId());
+
+        // 返回的是副本 修改state不影响缓存
+        cache.get("c1").getState().put("step", "changed");
+        assertEquals("a", cache.get("c1").getState().get("step"));
+
+        cache.written("c1", checkpoint("b"), 2, cache.stamp());
+        assertEquals("b", cache.get("c1").getId());
+
+        assertEquals(4, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.8, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testOrdering() {
+        CheckpointNearCache cache = cache(10, 60);
+
+        // 并发put时后返回的可能是较早写入的 按列表长度只保留最新的
+        cache.written("c1", checkpoint("b"), 3, cache.stamp());
+        cache.written("c1", checkpoint("a"), 2, cache.stamp());
+        assertEquals("b", cache.get("c1").getId());
+
+        // 读取期间发生失效 读取到的值不放入缓存
+        long stamp = cache.stamp();
+        cache.invalidate("c1");
+        cache.loaded("c1", checkpoint("a"), stamp);
+        assertNull(cache.get("c1"));
+
+        // 已有put写入的值时 读取到的值不覆盖
+        cache.written("c1", checkpoint("c"), 4, cache.stamp());
+        cache.loaded("c1", checkpoint("a"), cache.stamp());
+        assertEquals("c", cache.get("c1").getId());
+
+        // 写入Redis期间发生失效 写入的值不放入缓存
+        stamp = cache.stamp();
+        cache.invalidate("c1");
+        cache.written("c1", checkpoint("d"), 5, stamp);
+        assertNull(cache.get("c1"));
+    }
+
+    @Test
+    void testInvalidationPerConversation() {
+        CheckpointNearCache cache = cache(2, 60);
+
+        // 其他会话的失效不影响当前会话放入缓存
+        long stamp = cache.stamp();
+        cache.invalidate("a");
+        cache.loaded("b", checkpoint("b1"), stamp);
+        assertEquals("b1", cache.get("b").getId());
+        cache.written("b", checkpoint("b2"), 2, stamp);
+        assertEquals("b2", cache.get("b").getId());
+
+        // 失效记录被淘汰后 早于被淘汰序号的读写视为可能已失效
+        stamp = cache.stamp();
+        cache.invalidate("c");
+        cache.invalidate("d");
+        cache.invalidate("e");
+        cache.loaded("c", checkpoint("c1"), stamp);
+        assertNull(cache.get("c"));
+        cache.loaded("f", checkpoint("f1"), cache.stamp());
+        assertEquals("f1", cache.get("f").getId());
+    }
+
+    @Test
+    void testDeepCopy() {
+        CheckpointNearCache cache = cache(10, 60);
+        Map<String, Object> state = new HashMap<>();
+        state.put("messages", new ArrayList<>(List.of("m1")));
+        cache.written("c1", Checkpoint.builder().id("a").state(state).nodeId("model").nextNodeId("tool").build(), 1, cache.stamp());
+
+        // 修改原值或返回值中的消息列表都不影响缓存
+        ((List<Object>) state.get("messages")).add("m2");
+        ((List<Object>) cache.get("c1").getState().get("messages")).add("m3");
+        assertEquals(List.of("m1"), cache.get("c1").getState().get("messages"));
+    }
+
+    @Test
+    void testEviction() {
+        CheckpointNearCache cache = cache(2, 60);
+        cache.written("c1", checkpoint("a"), 1, cache.stamp());
+        cache.written("c2", checkpoint("b"), 1, cache.stamp());
+        cache.get("c1");
+        cache.written("c3", checkpoint("c"), 1, cache.stamp());
+        assertNull(cache.get("c2"));
+        assertNotNull(cache.get("c1"));
+
+        CheckpointNearCache expired = cache(2, 0);
+        expired.written("c1", checkpoint("a"), 1, expired.stamp());
+        assertNull(expired.get("c1"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.yokior.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Yokior
+ * @description 项目导入清单 记录每个文件上次导入时的状态 用于增量导入
+ * @date 2026/3/3 10:12
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProjectManifest {
+
+    /**
+     * 项目名
+     */
+    private String projectName;
+
+    /**
+     * 文件相对路径 -> 文件状态
+     */
+    @Builder.Default
+    private Map<String, FileEntry> files = new HashMap<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class FileEntry {
+
+        /**
+         * 文件内容SHA-256
+         */
+        private String hash;
+
+        /**
+         * 文件大小
+         */
+        private Long size;
+
+        /**
+         * 最后修改时间
+         */
+        private Long lastModified;
+
+        /**
+         * 分片中记录的所处位置 删除旧分片时使用
+         */
+        private String site;
+
+        /**
+         * 分片数量
+         */
+        private Integer chunkCount;
+    }
+}
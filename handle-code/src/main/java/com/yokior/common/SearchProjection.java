@@ -0,0 +1,32 @@
+package com.yokior.common;
+
+import java.util.List;
+
+/**
+ * @author Yokior
+ * @description 向量搜索返回的字段
+ * @date 2026/3/8 16:20
+ */
+public enum SearchProjection {
+
+    /**
+     * 全部字段
+     */
+    FULL(List.of("content", "class_name", "method_name", "type", "site", "project_name")),
+
+    /**
+     * 不返回代码内容 content最长65535个字符
+     * 先用该模式搜索筛选，再通过 IMilvusService.hydrate 只为用到的结果补充内容
+     */
+    LEAN(List.of("class_name", "method_name", "type", "site", "project_name"));
+
+    private final List<String> outputFields;
+
+    SearchProjection(List<String> outputFields) {
+        this.outputFields = outputFields;
+    }
+
+    public List<String> getOutputFields() {
+        return outputFields;
+    }
+}
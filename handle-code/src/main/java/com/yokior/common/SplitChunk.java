@@ -5,8 +5,6 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.util.List;
-
 /**
  * @author Yokior
  * @description 拆分分片结果
@@ -21,7 +19,7 @@ public class SplitChunk {
     /**
      * 分片向量
      */
-    private List<Float> vector;
+    private float[] vector;
 
     /**
      * 分片内容
@@ -34,6 +34,36 @@ public class EmbedConfig {
 
     private Integer dimensions;
 
+    /**
+     * 单次embedding请求最多包含的文本条数
+     */
+    private Integer batchSize = 32;
+
+    /**
+     * 单次embedding请求估算的token上限
+     */
+    private Integer batchTokens = 8192;
+
+    /**
+     * 同时在途的embedding请求数
+     */
+    private Integer maxInFlight = 4;
+
+    /**
+     * 是否启用向量缓存
+     */
+    private Boolean cacheEnabled = true;
+
+    /**
+     * 向量缓存目录 为空时使用临时目录
+     */
+    private String cacheDir;
+
+    /**
+     * 内存中缓存的向量条数
+     */
+    private Integer cacheMemorySize = 10000;
+
     @Bean
     @Primary
     public EmbeddingModel ollama2OpenAiEmbeddingModel(OpenAiApi openAiApi) {
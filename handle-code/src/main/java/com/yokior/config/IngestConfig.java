@@ -0,0 +1,79 @@
+package com.yokior.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Yokior
+ * @description 代码导入相关配置
+ * @date 2026/3/5 10:12
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ingest")
+public class IngestConfig {
+
+    /**
+     * 单次写入Milvus的分片条数
+     */
+    private Integer insertBatchSize = 1000;
+
+    /**
+     * 同时在途的写入批次数
+     */
+    private Integer insertConcurrency = 4;
+
+    /**
+     * 缓冲区中最早的分片等待超过该时间后 不满一批也写入
+     */
+    private Long insertLingerMs = 1000L;
+
+    /**
+     * 每个导入任务中 分块结果队列的容量（按文件计）
+     */
+    private Integer queueCapacity = 100;
+
+    /**
+     * 每个导入任务中 同时分块的文件数 为空时取CPU核心数
+     */
+    private Integer splitConcurrency;
+
+    /**
+     * 每个导入任务中 从队列取分块并向量化的消费者数
+     * 向量化主要在等待HTTP响应 可以比CPU核心数多
+     */
+    private Integer embedWorkers = 8;
+
+    /**
+     * 向量化消费者一次最多合并的分块数 小文件会合并成一批请求
+     */
+    private Integer embedBatchChunks = 64;
+
+    /**
+     * 导入过程中输出各阶段进度的间隔
+     */
+    private Long reportIntervalMs = 5000L;
+
+    /**
+     * embedding请求、Milvus写入和导入任务使用虚拟线程 需要Java 21及以上
+     * 开启后并发只由信号量控制（ollama.max-in-flight、ingest.insert-concurrency） 可以适当调大
+     */
+    private Boolean virtualThreads = false;
+
+    /**
+     * 扫描项目时跳过的目录名
+     */
+    private List<String> ignoreDirs = new ArrayList<>(List.of(
+            "target", "build", "out", ".git", ".idea", ".gradle", "node_modules",
+            "generated-sources", "generated-test-sources", "generated"));
+
+    /**
+     * 超过该大小的源文件不导入 通常是生成的代码
+     */
+    private Long maxFileBytes = 1024 * 1024L;
+
+}
@@ -0,0 +1,171 @@
+package com.yokior.config;
+
+import io.milvus.v2.common.IndexParam;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Yokior
+ * @description Milvus向量索引配置
+ *
+ * 预置了几种索引方案 通过 milvus.index.profile 选择，也可以在 milvus.index.profiles 下修改参数或新增方案
+ * hnsw    : 内存索引 召回率高、延迟低 占用内存最多（默认）
+ * ivf_flat: 按nlist聚类 搜索nprobe个簇 内存与原始向量相当
+ * ivf_pq  : 在ivf_flat基础上乘积量化 内存小很多 召回率较低
+ * diskann : 磁盘索引 适合内存放不下的大集合
+ * 建索引参数在创建集合时使用，搜索参数是该方案的默认值 单次搜索传入的参数会覆盖同名的默认值
+ *
+ * @date 2026/3/8 10:30
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "milvus.index")
+public class MilvusIndexConfig {
+
+    /**
+     * 使用的索引方案
+     */
+    private String profile = "hnsw";
+
+    /**
+     * 预置的索引方案
+     */
+    private static final Map<String, IndexProfile> DEFAULT_PROFILES = Map.of(
+            "hnsw", new IndexProfile(IndexParam.IndexType.HNSW,
+                    Map.<String, Object>of("M", 16, "efConstruction", 200),
+                    Map.<String, Object>of("ef", 64)),
+            "ivf_flat", new IndexProfile(IndexParam.IndexType.IVF_FLAT,
+                    Map.<String, Object>of("nlist", 1024),
+                    Map.<String, Object>of("nprobe", 16)),
+            "ivf_pq", new IndexProfile(IndexParam.IndexType.IVF_PQ,
+                    Map.<String, Object>of("nlist", 1024, "m", 16, "nbits", 8),
+                    Map.<String, Object>of("nprobe", 32)),
+            "diskann", new IndexProfile(IndexParam.IndexType.DISKANN,
+                    Map.of(),
+                    Map.<String, Object>of("search_list", 100))
+    );
+
+    /**
+     * 配置的索引方案 key为方案名
+     * 与预置方案同名时只覆盖配置了的参数 其余沿用预置值
+     */
+    private Map<String, IndexProfile> profiles = new LinkedHashMap<>();
+
+    /**
+     * 建立倒排索引的标量字段 用于按类型、类名、项目名过滤的搜索
+     */
+    private List<String> scalarIndexFields = List.of("type", "class_name", "project_name");
+
+    // 合并后的索引方案 每次搜索都会用到 只合并一次
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Map<String, IndexProfile> resolvedProfiles = new ConcurrentHashMap<>();
+
+    /**
+     * 当前使用的索引方案
+     */
+    public IndexProfile getActiveProfile() {
+        return getProfile(profile);
+    }
+
+    /**
+     * 按名称获取索引方案 配置的参数与预置方案合并
+     */
+    public IndexProfile getProfile(String name) {
+        return resolvedProfiles.computeIfAbsent(name, key -> {
+            IndexProfile defaults = DEFAULT_PROFILES.get(key);
+            IndexProfile configured = profiles.get(key);
+            if (configured == null) {
+                if (defaults == null) {
+                    Set<String> names = new TreeSet<>(DEFAULT_PROFILES.keySet());
+                    names.addAll(profiles.keySet());
+                    throw new IllegalArgumentException("未知的索引方案: " + key + " 可选: " + names);
+                }
+                return defaults;
+            }
+            return defaults == null ? configured : defaults.merge(configured);
+        });
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class IndexProfile {
+
+        // 搜索时的候选数量参数 不能小于topK
+        private static final List<String> CANDIDATE_PARAMS = List.of("ef", "search_list");
+
+        /**
+         * 索引类型
+         */
+        private IndexParam.IndexType indexType;
+
+        /**
+         * 相似度度量 建索引和搜索时需要一致 未配置时为COSINE
+         */
+        private IndexParam.MetricType metricType;
+
+        /**
+         * 建索引参数 如HNSW的M、efConstruction，IVF的nlist
+         */
+        private Map<String, Object> buildParams = new HashMap<>();
+
+        /**
+         * 默认搜索参数 如HNSW的ef，IVF的nprobe，DISKANN的search_list
+         */
+        private Map<String, Object> searchParams = new HashMap<>();
+
+        public IndexProfile(IndexParam.IndexType indexType, Map<String, Object> buildParams, Map<String, Object> searchParams) {
+            this.indexType = indexType;
+            this.buildParams = new HashMap<>(buildParams);
+            this.searchParams = new HashMap<>(searchParams);
+        }
+
+        /**
+         * 以当前方案为基础 用configured中配置了的值覆盖
+         */
+        IndexProfile merge(IndexProfile configured) {
+            IndexProfile merged = new IndexProfile(
+                    configured.indexType != null ? configured.indexType : indexType, buildParams, searchParams);
+            merged.metricType = configured.metricType != null ? configured.metricType : metricType;
+            merged.buildParams.putAll(configured.buildParams);
+            merged.searchParams.putAll(configured.searchParams);
+            return merged;
+        }
+
+        public IndexParam.MetricType getMetricType() {
+            return metricType != null ? metricType : IndexParam.MetricType.COSINE;
+        }
+
+        /**
+         * 合并搜索参数 单次搜索传入的参数优先
+         * 默认的候选数量（HNSW的ef、DISKANN的search_list）小于topK时Milvus会拒绝搜索，此时提高到topK
+         *
+         * @return 新的Map 修改不影响方案的默认值
+         */
+        public Map<String, Object> mergeSearchParams(Map<String, Object> params, int topK) {
+            Map<String, Object> merged = new HashMap<>(searchParams);
+            for (String key : CANDIDATE_PARAMS) {
+                if (merged.get(key) instanceof Number candidates && candidates.intValue() < topK) {
+                    merged.put(key, topK);
+                }
+            }
+            if (params != null) {
+                merged.putAll(params);
+            }
+            return merged;
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package com.yokior.config;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.*;
 
 @Configuration
+@Slf4j
 public class ThreadPoolConfig {
 
     @Bean("codeProcessExecutor") // 给线程池起个名字，方便后续注入
@@ -35,15 +38,101 @@ public class ThreadPoolConfig {
         );
     }
 
+    @Bean("embeddingExecutor")
+    public Executor embeddingExecutor(IngestConfig ingestConfig) {
+        // embedding请求是IO密集型 线程数可以比CPU核心数多
+        // 实际并发由EmbeddingServiceImpl中的信号量控制
+        if (useVirtualThreads(ingestConfig)) {
+            return newVirtualThreadExecutor("embedding-virtual-");
+        }
+        int corePoolSize = Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(
+                corePoolSize,
+                corePoolSize * 4,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1000),
+                new ThreadFactoryBuilder().setNameFormat("embedding-executor-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
     @Bean("insertExecutor")
-    public Executor insertExecutor() {
+    public Executor insertExecutor(IngestConfig ingestConfig) {
+        // 线程数与在途批次数一致 实际并发由MilvusBulkWriter中的信号量控制
+        if (useVirtualThreads(ingestConfig)) {
+            return newVirtualThreadExecutor("insert-virtual-");
+        }
+        int threads = Math.max(1, ingestConfig.getInsertConcurrency());
         return new ThreadPoolExecutor(
-                1, // 核心线程数
-                1, // 最大线程数
+                threads, // 核心线程数
+                threads, // 最大线程数
                 0L, TimeUnit.MILLISECONDS, // 空闲线程存活时间
                 new LinkedBlockingQueue<>(100), // 任务队列
                 new ThreadFactoryBuilder().setNameFormat("insert-executor-%d").build(),
                 new ThreadPoolExecutor.CallerRunsPolicy()
         );
     }
+
+    @Bean("unzipExecutor")
+    public Executor unzipExecutor() {
+        // 解压时并行解压缩各个条目 主要消耗CPU
+        int corePoolSize = Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(
+                corePoolSize,
+                corePoolSize,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1000),
+                new ThreadFactoryBuilder().setNameFormat("unzip-executor-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    @Bean("ingestJobExecutor")
+    public Executor ingestJobExecutor(IngestConfig ingestConfig) {
+        // 导入任务的协调线程和消费者线程 生命周期与任务相同 大部分时间在等待
+        // 不能排队也不能由调用者执行 否则消费者启动不了会导致生产者一直阻塞
+        if (useVirtualThreads(ingestConfig)) {
+            return newVirtualThreadExecutor("ingest-job-virtual-");
+        }
+        return new ThreadPoolExecutor(
+                0,
+                Integer.MAX_VALUE,
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("ingest-job-%d").build()
+        );
+    }
+
+    /**
+     * 是否使用虚拟线程
+     * 需要配置开启并且运行在Java 21及以上 否则仍使用平台线程池
+     */
+    private static boolean useVirtualThreads(IngestConfig ingestConfig) {
+        if (!Boolean.TRUE.equals(ingestConfig.getVirtualThreads())) {
+            return false;
+        }
+        if (Runtime.version().feature() < 21) {
+            log.warn("当前Java版本 {} 不支持虚拟线程，仍使用平台线程池", Runtime.version());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 每个任务一个虚拟线程
+     * 项目按Java 17编译 这里通过反射调用 Thread.ofVirtual().name(prefix, 0).factory()
+     * 和 Executors.newThreadPerTaskExecutor(factory)
+     */
+    private static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程执行器失败", e);
+        }
+    }
 }
@@ -0,0 +1,364 @@
+package com.yokior.service.embedding;
+
+import com.yokior.config.EmbedConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Yokior
+ * @description 向量缓存
+ *
+ * 以 (模型, 维度, 内容) 的SHA-256作为key
+ * 磁盘上是一个只追加的文件，每条记录为 [32字节key][int维度][维度*4字节向量]
+ * 启动时扫描文件建立 key -> 偏移量 的索引，读取时按偏移量定位
+ * 内存中再放一层有界LRU，热点向量不需要读磁盘
+ * 缓存文件可能被多个进程共用：追加时持有排他文件锁，并先把其他进程追加的记录补进索引；
+ * 本地索引未命中且文件变长时，持有共享锁补充索引
+ *
+ * @date 2026/3/2 14:20
+ */
+@Component
+@Slf4j
+public class EmbeddingCache {
+
+    private static final int KEY_LENGTH = 32;
+
+    private static final int HEADER_LENGTH = KEY_LENGTH + Integer.BYTES;
+
+    // 文件锁加在文件末尾之外的一个字节上 不影响Windows下其他进程读取记录
+    private static final long LOCK_POSITION = Long.MAX_VALUE - 1;
+
+    // 同一个JVM内不能对同一文件重复加锁 按文件加一层监视器
+    private static final Map<Path, Object> FILE_MONITORS = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+
+    private final String model;
+
+    private final Integer dimensions;
+
+    private final int memorySize;
+
+    private FileChannel channel;
+
+    private Object fileMonitor;
+
+    // 已经建立索引的文件长度
+    private long indexedSize;
+
+    // key -> 记录在文件中的偏移量
+    private final Map<CacheKey, Long> index = new HashMap<>();
+
+    // 内存LRU
+    private final LinkedHashMap<CacheKey, float[]> lru;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public EmbeddingCache(EmbedConfig embedConfig) {
+        this.model = embedConfig.getModel();
+        this.dimensions = embedConfig.getDimensions();
+        this.memorySize = Math.max(0, embedConfig.getCacheMemorySize());
+        this.lru = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, float[]> eldest) {
+                return size() > memorySize;
+            }
+        };
+
+        boolean opened = false;
+        if (Boolean.TRUE.equals(embedConfig.getCacheEnabled())) {
+            try {
+                open(resolveCacheFile(embedConfig.getCacheDir()));
+                opened = true;
+            } catch (IOException e) {
+                log.error("打开向量缓存失败，本次运行不使用缓存", e);
+            }
+        }
+        this.enabled = opened;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算缓存key
+     */
+    public CacheKey key(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(model).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(dimensions).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(content).getBytes(StandardCharsets.UTF_8));
+            return new CacheKey(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 获取缓存的向量
+     *
+     * @return 不存在时返回null
+     */
+    public float[] get(CacheKey key) {
+        if (!enabled) {
+            return null;
+        }
+
+        Long offset;
+        synchronized (this) {
+            float[] vector = lru.get(key);
+            if (vector != null) {
+                memoryHits.incrementAndGet();
+                return vector;
+            }
+            offset = index.get(key);
+        }
+
+        if (offset == null) {
+            offset = refreshAndGet(key);
+        }
+        if (offset == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try {
+            float[] vector = read(offset);
+            diskHits.incrementAndGet();
+            synchronized (this) {
+                lru.put(key, vector);
+            }
+            return vector;
+        } catch (IOException e) {
+            log.warn("读取向量缓存失败: {}", e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存
+     */
+    public void put(CacheKey key, float[] vector) {
+        if (!enabled || vector == null) {
+            return;
+        }
+
+        synchronized (this) {
+            lru.put(key, vector);
+            if (index.containsKey(key)) {
+                return;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(key.bytes).putInt(vector.length);
+            buffer.asFloatBuffer().put(vector);
+            buffer.rewind();
+
+            synchronized (fileMonitor) {
+                try (FileLock ignored = channel.lock(LOCK_POSITION, 1, false)) {
+                    // 先补上其他进程追加的记录 再追加到末尾
+                    refresh();
+                    if (index.containsKey(key)) {
+                        return;
+                    }
+                    if (channel.size() > indexedSize) {
+                        // 持有排他锁时仍有不完整的记录 说明写入的进程已经退出
+                        channel.truncate(indexedSize);
+                    }
+                    long offset = indexedSize;
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, offset + buffer.position());
+                    }
+                    index.put(key, offset);
+                    indexedSize = offset + buffer.capacity();
+                } catch (IOException e) {
+                    log.warn("写入向量缓存失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 本地索引未命中时 检查其他进程是否追加了记录
+     */
+    private synchronized Long refreshAndGet(CacheKey key) {
+        try {
+            if (channel.size() <= indexedSize) {
+                return index.get(key);
+            }
+            synchronized (fileMonitor) {
+                try (FileLock ignored = channel.lock(LOCK_POSITION, 1, true)) {
+                    refresh();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("刷新向量缓存索引失败: {}", e.getMessage());
+        }
+        return index.get(key);
+    }
+
+    public String stats() {
+        long memory = memoryHits.get();
+        long disk = diskHits.get();
+        long miss = misses.get();
+        long total = memory + disk + miss;
+        double hitRate = total == 0 ? 0 : (memory + disk) * 100.0 / total;
+        return String.format("内存命中 %d, 磁盘命中 %d, 未命中 %d, 命中率 %.1f%%, 磁盘条目 %d",
+                memory, disk, miss, hitRate, index.size());
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭向量缓存失败: {}", e.getMessage());
+        }
+        log.info("向量缓存已关闭 {}", stats());
+    }
+
+    private Path resolveCacheFile(String cacheDir) {
+        Path dir = cacheDir == null || cacheDir.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "java-ai-helper", "embedding-cache")
+                : Paths.get(cacheDir);
+        return dir.resolve("embedding-cache.bin");
+    }
+
+    /**
+     * 打开缓存文件并建立索引
+     * 末尾不完整的记录（写入过程中进程退出）会被截断
+     */
+    private void open(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileMonitor = FILE_MONITORS.computeIfAbsent(file.toAbsolutePath().normalize(), p -> new Object());
+
+        synchronized (fileMonitor) {
+            try (FileLock ignored = channel.lock(LOCK_POSITION, 1, false)) {
+                refresh();
+                long size = channel.size();
+                if (indexedSize < size) {
+                    log.warn("向量缓存文件末尾存在不完整记录，截断 {} 字节", size - indexedSize);
+                    channel.truncate(indexedSize);
+                }
+            }
+        }
+        log.info("向量缓存已加载 {} 条, 文件 {}", index.size(), file);
+    }
+
+    /**
+     * 从已索引的位置继续扫描 把新追加的完整记录加入索引
+     * 调用时需要持有文件锁
+     */
+    private void refresh() throws IOException {
+        long size = channel.size();
+        long offset = indexedSize;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        while (offset + HEADER_LENGTH <= size) {
+            header.clear();
+            readFully(header, offset);
+            header.flip();
+            byte[] keyBytes = new byte[KEY_LENGTH];
+            header.get(keyBytes);
+            int length = header.getInt();
+            long next = offset + HEADER_LENGTH + (long) length * Float.BYTES;
+            if (length < 0 || next > size) {
+                break;
+            }
+            index.putIfAbsent(new CacheKey(keyBytes), offset);
+            offset = next;
+        }
+        indexedSize = offset;
+    }
+
+    private float[] read(long offset) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(lengthBuffer, offset + KEY_LENGTH);
+        lengthBuffer.flip();
+        int length = lengthBuffer.getInt();
+
+        ByteBuffer data = ByteBuffer.allocate(length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(data, offset + HEADER_LENGTH);
+        data.flip();
+        float[] vector = new float[length];
+        data.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("向量缓存文件已损坏");
+            }
+        }
+    }
+
+    /**
+     * 缓存key SHA-256摘要
+     */
+    public static final class CacheKey {
+
+        private final byte[] bytes;
+
+        private final int hash;
+
+        private CacheKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CacheKey other && Arrays.equals(bytes, other.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package com.yokior.service.embedding;
 
+import com.yokior.common.SplitChunk;
+import com.yokior.config.EmbedConfig;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
 /**
  * @author Yokior
@@ -15,17 +24,226 @@ import java.util.List;
  * @date 2026/1/8 16:07
  */
 @Service
+@Slf4j
 public class EmbeddingServiceImpl implements IEmbeddingService {
 
     private EmbeddingModel embeddingModel;
 
-    public EmbeddingServiceImpl(EmbeddingModel embeddingModel) {
+    private final EmbeddingCache embeddingCache;
+
+    private final Executor embeddingExecutor;
+
+    private final int batchSize;
+
+    private final int batchTokens;
+
+    // 限制同时在途的embedding请求数 所有调用方共享
+    private final Semaphore inFlight;
+
+    public EmbeddingServiceImpl(EmbeddingModel embeddingModel,
+                                EmbedConfig embedConfig,
+                                EmbeddingCache embeddingCache,
+                                @Qualifier("embeddingExecutor") Executor embeddingExecutor) {
         this.embeddingModel = embeddingModel;
+        this.embeddingCache = embeddingCache;
+        this.embeddingExecutor = embeddingExecutor;
+        this.batchSize = Math.max(1, embedConfig.getBatchSize());
+        this.batchTokens = Math.max(1, embedConfig.getBatchTokens());
+        this.inFlight = new Semaphore(Math.max(1, embedConfig.getMaxInFlight()));
     }
 
     @Override
     public List<Float> embedding(String text) {
-        float[] floats = embeddingModel.embed(text);
-        return Arrays.asList(ArrayUtils.toObject(floats));
+        return Arrays.asList(ArrayUtils.toObject(embed(text)));
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return embeddingModel.embed(text);
+    }
+
+    @Override
+    public List<float[]> embedQueries(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return Arrays.asList(requestAll(texts));
+    }
+
+    @Override
+    public List<float[]> embedAll(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int size = texts.size();
+        float[][] vectors = new float[size][];
+        EmbeddingCache.CacheKey[] keys = new EmbeddingCache.CacheKey[size];
+
+        // 先查缓存 未命中的内容去重后再请求模型
+        List<String> missTexts = new ArrayList<>();
+        Map<String, Integer> missSlots = new HashMap<>();
+        int[] slots = new int[size];
+        for (int i = 0; i < size; i++) {
+            String text = texts.get(i);
+            if (embeddingCache.isEnabled()) {
+                keys[i] = embeddingCache.key(text);
+                vectors[i] = embeddingCache.get(keys[i]);
+            }
+            if (vectors[i] == null) {
+                Integer slot = missSlots.get(text);
+                if (slot == null) {
+                    slot = missTexts.size();
+                    missTexts.add(text);
+                    missSlots.put(text, slot);
+                }
+                slots[i] = slot;
+            }
+        }
+
+        if (!missTexts.isEmpty()) {
+            float[][] fetched = requestAll(missTexts);
+            for (int i = 0; i < size; i++) {
+                if (vectors[i] == null) {
+                    vectors[i] = fetched[slots[i]];
+                    if (keys[i] != null) {
+                        embeddingCache.put(keys[i], vectors[i]);
+                    }
+                }
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("批量向量化 {} 条, 请求模型 {} 条, 缓存 {}", size, missTexts.size(), embeddingCache.stats());
+        }
+
+        return Arrays.asList(vectors);
+    }
+
+    /**
+     * 请求模型获取向量
+     * 按条数和估算token数拆分成多个批次 并发请求
+     */
+    private float[][] requestAll(List<String> texts) {
+        float[][] vectors = new float[texts.size()][];
+        List<int[]> batches = packBatches(texts);
+
+        if (batches.size() == 1) {
+            // 只有一批 直接在当前线程请求
+            acquire();
+            try {
+                embedBatch(texts, 0, texts.size(), vectors);
+            } finally {
+                inFlight.release();
+            }
+            return vectors;
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(batches.size());
+        for (int[] batch : batches) {
+            // 获取许可失败时阻塞调用方 形成背压
+            acquire();
+            try {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        embedBatch(texts, batch[0], batch[1], vectors);
+                    } finally {
+                        inFlight.release();
+                    }
+                }, embeddingExecutor));
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+        return vectors;
+    }
+
+    @Override
+    public void embedChunks(List<SplitChunk> chunks) {
+        if (chunks == null || chunks.isEmpty()) {
+            return;
+        }
+
+        List<float[]> vectors = embedAll(chunks.stream().map(SplitChunk::getContent).toList());
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.get(i).setVector(vectors.get(i));
+        }
+    }
+
+    /**
+     * 请求一批文本的向量 结果按下标写回vectors
+     */
+    private void embedBatch(List<String> texts, int from, int to, float[][] vectors) {
+        long startTime = System.currentTimeMillis();
+        List<float[]> batchVectors = embeddingModel.embed(texts.subList(from, to));
+        if (batchVectors.size() != to - from) {
+            throw new IllegalStateException("embedding返回数量不一致，期望 " + (to - from) + " 实际 " + batchVectors.size());
+        }
+        for (int i = from; i < to; i++) {
+            vectors[i] = batchVectors.get(i - from);
+        }
+        log.debug("批量向量化 {} 条耗时 {}s", to - from, (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+    /**
+     * 按条数和估算token数拆分批次
+     *
+     * @return 每个批次的下标区间 [from, to)
+     */
+    private List<int[]> packBatches(List<String> texts) {
+        List<int[]> batches = new ArrayList<>();
+        int from = 0;
+        int tokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            int textTokens = estimateTokens(texts.get(i));
+            // 单条超过上限时也要单独成批 不能丢弃
+            if (i > from && (i - from >= batchSize || tokens + textTokens > batchTokens)) {
+                batches.add(new int[]{from, i});
+                from = i;
+                tokens = 0;
+            }
+            tokens += textTokens;
+        }
+        batches.add(new int[]{from, texts.size()});
+        return batches;
+    }
+
+    /**
+     * 粗略估算token数
+     * ASCII字符约4个一个token 其余字符（中文等）按一个字符一个token计算
+     */
+    private static int estimateTokens(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 128) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+
+    private void acquire() {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
     }
 }
@@ -1,5 +1,7 @@
 package com.yokior.service.embedding;
 
+import com.yokior.common.SplitChunk;
+
 import java.util.List;
 
 /**
@@ -16,4 +18,37 @@ public interface IEmbeddingService {
      */
     List<Float> embedding(String text);
 
+    /**
+     * 获取查询文本的嵌入向量 不经过向量缓存
+     *
+     * @param text
+     * @return
+     */
+    float[] embed(String text);
+
+    /**
+     * 批量获取查询文本的嵌入向量 不经过向量缓存
+     * 查询内容很少重复，写入缓存只会让缓存文件变大
+     *
+     * @param texts 文本列表
+     * @return 与texts顺序一一对应的向量列表
+     */
+    List<float[]> embedQueries(List<String> texts);
+
+    /**
+     * 批量获取文本的嵌入向量
+     * 按条数和估算token数拆分成多个请求并发执行
+     *
+     * @param texts 文本列表
+     * @return 与texts顺序一一对应的向量列表
+     */
+    List<float[]> embedAll(List<String> texts);
+
+    /**
+     * 批量向量化分片 并将结果回填到对应分片的vector中
+     *
+     * @param chunks 分片列表
+     */
+    void embedChunks(List<SplitChunk> chunks);
+
 }
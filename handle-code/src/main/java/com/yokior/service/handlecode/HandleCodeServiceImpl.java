@@ -1,24 +1,36 @@
 package com.yokior.service.handlecode;
 
 import com.yokior.common.SplitChunk;
+import com.yokior.common.ProjectManifest;
+import com.yokior.config.IngestConfig;
 import com.yokior.service.embedding.IEmbeddingService;
+import com.yokior.service.load.ILoadFileService;
+import com.yokior.service.manifest.IManifestService;
 import com.yokior.service.milvus.IMilvusService;
+import com.yokior.service.milvus.MilvusBulkWriter;
 import com.yokior.service.split.ISplitService;
+import com.yokior.utils.JavaFileScanner;
+import com.yokior.utils.SourceLoader;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
 
 /**
  * @author Yokior
@@ -38,17 +50,31 @@ public class HandleCodeServiceImpl implements IHandleCodeService {
     @Autowired
     private IMilvusService milvusService;
 
+    @Autowired
+    private IManifestService manifestService;
+
     @Autowired
     @Qualifier("codeProcessExecutor")
     private Executor codeProcessExecutor;
 
     @Autowired
-    @Qualifier("insertExecutor")
-    private Executor insertExecutor;
+    @Qualifier("ingestJobExecutor")
+    private Executor ingestJobExecutor;
+
+    @Autowired
+    private MilvusBulkWriter milvusBulkWriter;
 
-    // 使用阻塞队列作为生产者和消费者的缓冲区
-    // LinkedBlockingQueue 是线程安全的，且自带阻塞功能，非常适合这里
-    private final BlockingQueue<SplitChunk> chunkQueue = new LinkedBlockingQueue<>(1000);
+    @Autowired
+    private IngestConfig ingestConfig;
+
+    @Autowired
+    private JavaFileScanner javaFileScanner;
+
+    @Autowired
+    private ILoadFileService loadFileService;
+
+    // 正在运行的导入任务
+    private final Map<String, IngestJob> jobs = new ConcurrentHashMap<>();
 
 
     @Override
@@ -57,167 +83,361 @@ public class HandleCodeServiceImpl implements IHandleCodeService {
         // 项目名取最后一级目录
         String projectName = Paths.get(projectPath).getFileName().toString();
 
-        // 收集所有Java文件
-        List<Path> javaFiles = Files.walk(Paths.get(projectPath))
-                .filter(path -> path.toString().endsWith(".java"))
-                .collect(Collectors.toList());
-
         List<SplitChunk> batchChunkList = new ArrayList<>(1000);
-        int count = 0;
         // 记录开始时间
         long startTime = System.currentTimeMillis();
 
-        for (Path path : javaFiles) {
+        // 边扫描边处理
+        Path projectRoot = Paths.get(projectPath);
+        javaFileScanner.scan(projectRoot, (path, attrs) -> {
 
             // 加载并分块
-            List<SplitChunk> chunkList = splitService.loadAndSplit(path, projectName);
+            List<SplitChunk> chunkList = splitService.loadAndSplit(path, projectRoot, projectName);
             log.debug("加载并分块 {} 耗时 {}s ", path.getFileName(), (System.currentTimeMillis() - startTime)/1000.0);
 
-            // 遍历每一个分块
-            for (SplitChunk chunk : chunkList) {
-                // 向量化
-                List<Float> vector = embeddingService.embedding(chunk.getContent());
-                chunk.setVector(vector);
-                count++;
-            }
-            log.debug("向量化 {} 块耗时 {}s", chunkList.size(), (System.currentTimeMillis() - startTime)/1000.0);
-
             batchChunkList.addAll(chunkList);
 
-            // 每1000个分块向量保存一次数据库
-            if (count >= 1000) {
-                count = 0;
-                milvusService.batchInsert(batchChunkList);
-                log.debug("向数据库保存 {} 块耗时 {}s", batchChunkList.size(), (System.currentTimeMillis() - startTime)/1000.0);
+            // 每1000个分块批量向量化并保存一次数据库
+            if (batchChunkList.size() >= 1000) {
+                embedAndInsert(batchChunkList, startTime);
                 batchChunkList.clear();
             }
-        }
+            return true;
+        });
 
-        if (count > 0) {
-            milvusService.batchInsert(batchChunkList);
-            log.debug("向数据库保存 {} 块耗时 {}s", batchChunkList.size(), (System.currentTimeMillis() - startTime)/1000.0);
+        if (!batchChunkList.isEmpty()) {
+            embedAndInsert(batchChunkList, startTime);
         }
 
     }
 
+    /**
+     * 批量向量化并入库
+     */
+    private void embedAndInsert(List<SplitChunk> chunkList, long startTime) {
+        // 批量向量化 结果按顺序回填到分块中
+        embeddingService.embedChunks(chunkList);
+        log.debug("向量化 {} 块耗时 {}s", chunkList.size(), (System.currentTimeMillis() - startTime)/1000.0);
+
+        milvusService.batchInsert(chunkList);
+        log.debug("向数据库保存 {} 块耗时 {}s", chunkList.size(), (System.currentTimeMillis() - startTime)/1000.0);
+    }
+
 
     @Override
     public void splitAndEmbedAndSaveAsync(String projectPath) throws Exception {
+        submit(projectPath).await();
+    }
 
+    @Override
+    public IngestJob submit(String projectPath) {
         String projectName = Paths.get(projectPath).getFileName().toString();
+        return start(newJob(projectName, projectPath, Paths.get(projectPath)));
+    }
 
-        // 1. 收集所有Java文件
-        List<Path> javaFiles = Files.walk(Paths.get(projectPath))
-                .filter(path -> path.toString().endsWith(".java"))
-                .collect(Collectors.toList());
+    @Override
+    public IngestJob submitZip(String zipPath) {
+        // 项目名取压缩包文件名 与解压后的目录名一致
+        String fileName = Paths.get(zipPath).getFileName().toString();
+        String projectName = fileName.contains(".") ? fileName.substring(0, fileName.lastIndexOf('.')) : fileName;
+
+        // 以压缩包文件系统的根目录作为项目根目录 site与解压后导入时相同
+        FileSystem zipFileSystem = loadFileService.openZip(zipPath);
+        IngestJob job;
+        try {
+            job = newJob(projectName, zipPath, zipFileSystem.getPath("/"));
+        } catch (RuntimeException e) {
+            closeQuietly(zipFileSystem);
+            throw e;
+        }
+        job.getFuture().whenComplete((v, e) -> closeQuietly(zipFileSystem));
+        try {
+            return start(job);
+        } catch (RuntimeException e) {
+            closeQuietly(zipFileSystem);
+            throw e;
+        }
+    }
 
-        long startTime = System.currentTimeMillis();
+    private IngestJob newJob(String projectName, String projectPath, Path projectRoot) {
+        int splitConcurrency = ingestConfig.getSplitConcurrency() != null
+                ? ingestConfig.getSplitConcurrency()
+                : Runtime.getRuntime().availableProcessors();
+        return new IngestJob(projectName, projectPath, projectRoot, ingestConfig.getQueueCapacity(), splitConcurrency);
+    }
 
-        // 停止信号
-        SplitChunk stopSplitChunk = new SplitChunk();
-
-        // --- 消费者线程 ---
-        // 线程池只有一个线程处理
-        // 专门负责从队列里取数据并入库
-        CompletableFuture<Void> insertFuture = CompletableFuture.runAsync(() -> {
-            log.debug("消费者启动");
-            // 缓冲区大小
-            int capacity = 1000;
-            List<SplitChunk> batchBuffer = new ArrayList<>(capacity);
-            while (true) {
+    private IngestJob start(IngestJob job) {
+        jobs.put(job.getId(), job);
+        job.getFuture().whenComplete((v, e) -> jobs.remove(job.getId()));
+
+        try {
+            ingestJobExecutor.execute(() -> runJob(job));
+        } catch (RuntimeException e) {
+            // 没能提交时结束任务 从任务列表中移除
+            job.fail(e);
+            job.finish();
+            throw e;
+        }
+        return job;
+    }
+
+    private void closeQuietly(FileSystem fileSystem) {
+        try {
+            fileSystem.close();
+        } catch (IOException e) {
+            log.warn("关闭压缩包失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public IngestJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * 执行导入任务
+     * 分块：每个文件一个任务提交到codeProcessExecutor（CPU线程池） 同时进行的文件数由splitConcurrency限制
+     * 向量化：embedWorkers个消费者从队列取分块 合并成批后请求embedding
+     * 写入：交给MilvusBulkWriter会话 满一批或超时后并发写入
+     * 下游阶段处理不过来时 有界队列和写入会话的在途批次会逐级阻塞上游
+     */
+    private void runJob(IngestJob job) {
+        int workers = Math.max(1, ingestConfig.getEmbedWorkers());
+        List<CompletableFuture<Void>> consumerFutures = new ArrayList<>(workers);
+
+        MilvusBulkWriter.Session session = milvusBulkWriter.open(job.getId());
+        job.setSession(session);
+        try {
+            // --- 向量化阶段 ---
+            for (int i = 0; i < workers; i++) {
+                consumerFutures.add(CompletableFuture.runAsync(() -> consume(job, session), ingestJobExecutor));
+            }
+
+            // --- 分块阶段 ---
+            // 边扫描边提交 找到第一个文件就开始分块
+            List<CompletableFuture<Void>> producerFutures = new ArrayList<>();
+            javaFileScanner.scan(job.getProjectRoot(), (path, attrs) -> {
+                if (!job.acquireSplit()) {
+                    return false;
+                }
+                job.getFiles().incrementAndGet();
                 try {
-                    // take()方法是阻塞的：如果队列空了，它就在这死等，不占用CPU，直到有数据进来
-                    // 这比 sleep 轮询要高效得多
-                    SplitChunk chunk = chunkQueue.take();
-
-                    // 遇到结束信号
-                    if (chunk == stopSplitChunk) {
-                        log.debug("收到停止信号通知 消费者结束");
-                        break;
-                    }
-
-                    batchBuffer.add(chunk);
-
-                    if (batchBuffer.size() >= capacity) {
-                        milvusService.batchInsert(batchBuffer);
-                        log.debug("批量入库 {} 个分块", batchBuffer.size());
-                        batchBuffer.clear(); // 清空缓冲区，准备下一批
-                    }
-                } catch (InterruptedException e) {
-                    // 如果线程被中断（通常是程序结束信号），跳出循环
-                    Thread.currentThread().interrupt();
+                    producerFutures.add(CompletableFuture.runAsync(() -> produce(job, path), codeProcessExecutor));
+                } catch (RuntimeException e) {
+                    job.releaseSplit();
+                    throw e;
+                }
+                return true;
+            });
+
+            // 2. 等待所有生产者完成任务 再通知每个消费者结束
+            awaitWithReport(job, CompletableFuture.allOf(producerFutures.toArray(new CompletableFuture[0])));
+            log.debug("分块阶段完成，{}，{}", job.progress(), splitService.stats());
+            for (int i = 0; i < workers; i++) {
+                if (!job.put(IngestJob.END)) {
                     break;
-                } catch (Exception e) {
-                    log.error("消费者入库异常", e);
                 }
             }
 
-            log.debug("当前缓冲区剩余: {}", batchBuffer.size());
+            // 3. 等待消费者结束
+            awaitWithReport(job, CompletableFuture.allOf(consumerFutures.toArray(new CompletableFuture[0])));
+            log.debug("向量化阶段完成，{}", job.progress());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail(e);
+        } catch (Exception e) {
+            job.fail(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+        } finally {
+            // 出错或取消时消费者会自行退出 这里只等待它们结束
+            CompletableFuture.allOf(consumerFutures.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+
+            // 出错或取消时丢弃缓冲区中还没提交的分块 否则会话关闭时写入剩余分片并等待所有批次完成
+            if (job.isCancelled()) {
+                session.discard();
+            }
+            try {
+                session.close();
+            } catch (RuntimeException e) {
+                job.fail(e);
+            }
+            log.debug("导入结束，{}", job.progress());
+            job.finish();
+        }
+    }
 
-            // 【关键点】循环结束后，可能还有剩余的数据没满1000个，必须最后存一次
-            if (!batchBuffer.isEmpty()) {
-                try {
-                    milvusService.batchInsert(batchBuffer);
-                    log.debug("最后剩余 {} 个分块入库", batchBuffer.size());
-                } catch (Exception e) {
-                    log.error("最终入库异常", e);
-                }
+    /**
+     * 等待完成 期间按间隔输出各阶段进度
+     */
+    private void awaitWithReport(IngestJob job, CompletableFuture<Void> future) throws Exception {
+        long interval = Math.max(100, ingestConfig.getReportIntervalMs());
+        while (true) {
+            try {
+                future.get(interval, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                log.info("{}", job.progress());
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
             }
-        }, insertExecutor);// 建议使用独立的线程池，避免和计算任务抢占资源
+        }
+    }
 
-        // --- 生产者线程池 ---
-        List<CompletableFuture<Void>> producerFutures = new ArrayList<>();
+    private void produce(IngestJob job, Path path) {
+        try {
+            if (job.isCancelled()) {
+                return;
+            }
+            // 加载并分块
+            List<SplitChunk> chunkList = splitService.loadAndSplit(path, job.getProjectRoot(), job.getProjectName());
+            job.getSplitFiles().incrementAndGet();
+            job.getChunks().addAndGet(chunkList.size());
 
-        for (Path path : javaFiles) {
-            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-                try {
-                    // 1. 加载并分块
-                    List<SplitChunk> chunkList = splitService.loadAndSplit(path, projectName);
-
-                    // 2. 向量化并放入队列
-                    for (SplitChunk chunk : chunkList) {
-                        List<Float> vector = embeddingService.embedding(chunk.getContent());
-                        chunk.setVector(vector);
-
-                        // 【关键点】put() 也是线程安全的。如果队列满了（假设设置了容量），它会阻塞等待
-                        chunkQueue.put(chunk);
-                    }
-
-                    log.debug("文件 {} 处理完毕，已投入队列", path.getFileName());
-
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.error("处理文件 {} 失败", path, e);
-                    throw new RuntimeException(e);
-                } catch (Exception e) {
-                    log.error("处理文件 {} 失败", path, e);
-                    throw new RuntimeException(e);
-                }
-            }, codeProcessExecutor);
+            if (!chunkList.isEmpty()) {
+                job.put(chunkList);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail(e);
+        } catch (Exception e) {
+            log.error("处理文件 {} 失败", path, e);
+            job.fail(e);
+        } finally {
+            job.releaseSplit();
+        }
+    }
+
+    private void consume(IngestJob job, MilvusBulkWriter.Session session) {
+        int maxChunks = Math.max(1, ingestConfig.getEmbedBatchChunks());
+        try {
+            List<SplitChunk> chunkList;
+            while ((chunkList = job.takeBatch(maxChunks)) != null) {
+                // 已有批次写入失败时不再请求embedding
+                session.checkOpen();
+                // 批量向量化后交给写入会话 在途批次已满时会阻塞
+                embeddingService.embedChunks(chunkList);
+                job.getEmbedded().addAndGet(chunkList.size());
+                session.addAll(chunkList);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail(e);
+        } catch (Exception e) {
+            log.error("任务 {} 向量化失败", job.getId(), e);
+            job.fail(e);
+        }
+    }
+
+
+    @Override
+    public void reindexIncremental(String projectPath) throws Exception {
+
+        Path projectRoot = Paths.get(projectPath);
+        String projectName = projectRoot.getFileName().toString();
+        long startTime = System.currentTimeMillis();
+
+        ProjectManifest oldManifest = manifestService.load(projectName);
+        if (oldManifest == null) {
+            // 没有清单说明是首次增量导入 之前全量导入的数据无法对应到文件 先整体清除
+            log.debug("项目 {} 没有导入清单，清除旧数据后全量导入", projectName);
+            milvusService.deleteByProject(projectName);
+            oldManifest = ProjectManifest.builder().projectName(projectName).build();
+        }
+        Map<String, ProjectManifest.FileEntry> oldFiles = oldManifest.getFiles();
+
+        ProjectManifest newManifest = ProjectManifest.builder().projectName(projectName).build();
+        Map<String, ProjectManifest.FileEntry> newFiles = newManifest.getFiles();
+        // 需要删除旧分片的位置（新增、已修改和已删除的文件）
+        Set<String> staleSites = new LinkedHashSet<>();
+        List<Path> changedFiles = new ArrayList<>();
+
+        long fileCount = javaFileScanner.scan(projectRoot, (path, attrs) -> {
+            String relativePath = projectRoot.relativize(path).toString().replace('\\', '/');
+            ProjectManifest.FileEntry oldEntry = oldFiles.get(relativePath);
+            long size = attrs.size();
+            long lastModified = attrs.lastModifiedTime().toMillis();
+
+            // 大小和修改时间都没变 认为文件未修改 不再计算hash
+            if (oldEntry != null && oldEntry.getSize() != null && oldEntry.getSize() == size
+                    && oldEntry.getLastModified() != null && oldEntry.getLastModified() == lastModified) {
+                newFiles.put(relativePath, oldEntry);
+                return true;
+            }
+
+            String hash = hashFile(path);
+            if (oldEntry != null && hash.equals(oldEntry.getHash())) {
+                oldEntry.setSize(size);
+                oldEntry.setLastModified(lastModified);
+                newFiles.put(relativePath, oldEntry);
+                return true;
+            }
 
-            producerFutures.add(future);
+            // 新增的文件也要删除 上次导入中途失败时可能已经写入了部分分片 而清单没有保存
+            if (oldEntry != null && oldEntry.getSite() != null) {
+                staleSites.add(oldEntry.getSite());
+            }
+            staleSites.add(SourceLoader.relativeSite(projectRoot, path));
+            changedFiles.add(path);
+            newFiles.put(relativePath, ProjectManifest.FileEntry.builder()
+                    .hash(hash)
+                    .size(size)
+                    .lastModified(lastModified)
+                    .build());
+            return true;
+        });
+
+        // 清单中存在但本次没有扫描到的文件 说明已删除
+        for (Map.Entry<String, ProjectManifest.FileEntry> entry : oldFiles.entrySet()) {
+            if (!newFiles.containsKey(entry.getKey()) && entry.getValue().getSite() != null) {
+                staleSites.add(entry.getValue().getSite());
+            }
         }
 
-        // 3. 等待所有生产者完成任务
-        CompletableFuture.allOf(producerFutures.toArray(new CompletableFuture[0]))
-//                .thenRun(() -> {
-//                    try {
-//                        chunkQueue.put(stopSplitChunk);
-//                    } catch (InterruptedException e) {
-//                        throw new RuntimeException(e);
-//                    }
-//                })
-//                .thenCompose(v -> insertFuture)
-                .join();
-        log.debug("所有生产者任务完成，耗时 {}s，等待消费者...", (System.currentTimeMillis() - startTime)/1000.0);
-
-        // 4. 通知消费者线程结束
-        chunkQueue.put(stopSplitChunk);
-        // 等待消费者线程结束
-        insertFuture.join();
-        log.debug("所有任务完成，耗时 {}s", (System.currentTimeMillis() - startTime)/1000.0);
+        log.debug("项目 {} 共 {} 个文件，需要重新导入 {} 个，需要删除旧分片 {} 处",
+                projectName, fileCount, changedFiles.size(), staleSites.size());
 
+        // 先删除旧分片再写入新分片 中途失败时清单不会保存 下次重新处理这些文件
+        milvusService.deleteBySites(projectName, new ArrayList<>(staleSites));
 
+        List<SplitChunk> batchChunkList = new ArrayList<>(1000);
+        for (Path path : changedFiles) {
+            List<SplitChunk> chunkList = splitService.loadAndSplit(path, projectRoot, projectName);
+
+            ProjectManifest.FileEntry entry = newFiles.get(projectRoot.relativize(path).toString().replace('\\', '/'));
+            entry.setChunkCount(chunkList.size());
+            if (!chunkList.isEmpty()) {
+                entry.setSite(chunkList.get(0).getSite());
+            }
+
+            batchChunkList.addAll(chunkList);
+            if (batchChunkList.size() >= 1000) {
+                embedAndInsert(batchChunkList, startTime);
+                batchChunkList.clear();
+            }
+        }
+
+        if (!batchChunkList.isEmpty()) {
+            embedAndInsert(batchChunkList, startTime);
+        }
+
+        manifestService.save(newManifest);
+        log.debug("增量导入完成，耗时 {}s", (System.currentTimeMillis() - startTime)/1000.0);
+    }
+
+    /**
+     * 计算文件内容SHA-256
+     */
+    private String hashFile(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, len);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
 }
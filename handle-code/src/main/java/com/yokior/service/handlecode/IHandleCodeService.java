@@ -1,7 +1,5 @@
 package com.yokior.service.handlecode;
 
-import java.io.IOException;
-
 /**
  * @author Yokior
  * @description
@@ -13,4 +11,38 @@ public interface IHandleCodeService {
 
     void splitAndEmbedAndSaveAsync(String projectPath) throws Exception;
 
+    /**
+     * 提交导入任务 立即返回
+     * 每个任务有独立的队列和写入会话 可以同时导入多个项目
+     *
+     * @param projectPath 项目路径
+     * @return 导入任务 可查看进度、取消、等待完成
+     */
+    IngestJob submit(String projectPath);
+
+    /**
+     * 直接从压缩包提交导入任务 不解压到临时目录
+     * .java条目从压缩包中流式读取后分块，site为条目在压缩包中的路径
+     *
+     * @param zipPath 压缩包路径
+     * @return 导入任务
+     */
+    IngestJob submitZip(String zipPath);
+
+    /**
+     * 获取正在运行的导入任务
+     *
+     * @param jobId 任务id
+     * @return 任务不存在或已结束时返回null
+     */
+    IngestJob getJob(String jobId);
+
+    /**
+     * 增量导入
+     * 根据项目清单只处理新增和修改的文件，并删除已修改和已删除文件的旧分片
+     *
+     * @param projectPath 项目路径
+     */
+    void reindexIncremental(String projectPath) throws Exception;
+
 }
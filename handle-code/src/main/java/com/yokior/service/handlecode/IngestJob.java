@@ -0,0 +1,265 @@
+package com.yokior.service.handlecode;
+
+import com.yokior.common.SplitChunk;
+import com.yokior.service.milvus.MilvusBulkWriter;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Yokior
+ * @description 一次代码导入任务
+ *
+ * 分为三个阶段：分块（CPU线程池）-> 向量化（IO线程）-> 写入（MilvusBulkWriter）
+ * 阶段之间通过有界队列连接，每个阶段的并发数单独配置
+ * 每个任务有自己的队列和写入会话，多个任务之间互不影响
+ * 通过计数器查看各阶段进度、队列深度和吞吐，通过future等待完成，可以随时取消
+ *
+ * @date 2026/3/5 15:40
+ */
+@Getter
+public class IngestJob {
+
+    /**
+     * 队列结束标记 每个消费者一个
+     */
+    static final List<SplitChunk> END = new ArrayList<>(0);
+
+    private final String id;
+
+    private final String projectName;
+
+    private final String projectPath;
+
+    /**
+     * 扫描的根目录 从压缩包导入时是压缩包文件系统的根目录
+     */
+    private final Path projectRoot;
+
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * 文件总数
+     */
+    private final AtomicLong files = new AtomicLong();
+
+    /**
+     * 已分块的文件数
+     */
+    private final AtomicLong splitFiles = new AtomicLong();
+
+    /**
+     * 分块数
+     */
+    private final AtomicLong chunks = new AtomicLong();
+
+    /**
+     * 已向量化的分块数
+     */
+    private final AtomicLong embedded = new AtomicLong();
+
+    /**
+     * 队列中等待向量化的分块数
+     */
+    private final AtomicLong queuedChunks = new AtomicLong();
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    @Getter(AccessLevel.NONE)
+    private final BlockingQueue<List<SplitChunk>> queue;
+
+    @Getter(AccessLevel.NONE)
+    private volatile MilvusBulkWriter.Session session;
+
+    // 限制分块阶段同时处理的文件数
+    @Getter(AccessLevel.NONE)
+    private final Semaphore splitPermits;
+
+    @Getter(AccessLevel.NONE)
+    private final int splitConcurrency;
+
+    private volatile boolean cancelled;
+
+    private volatile Throwable error;
+
+    public IngestJob(String projectName, String projectPath, Path projectRoot, int queueCapacity, int splitConcurrency) {
+        this.id = projectName + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.projectName = projectName;
+        this.projectPath = projectPath;
+        this.projectRoot = projectRoot;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.splitConcurrency = Math.max(1, splitConcurrency);
+        this.splitPermits = new Semaphore(this.splitConcurrency);
+    }
+
+    /**
+     * 已写入Milvus的分块数
+     */
+    public long getInserted() {
+        MilvusBulkWriter.Session current = session;
+        return current == null ? 0 : current.getRows();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 取消任务 已经在写入的批次会完成 剩余的分块不再处理 写入会话中缓冲的分块也会丢弃
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * 等待任务完成
+     * 任务失败时抛出原始异常 被取消时抛出CancellationException
+     */
+    public void await() throws Exception {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 正在分块的文件数
+     */
+    public int getSplitting() {
+        return splitConcurrency - splitPermits.availablePermits();
+    }
+
+    /**
+     * 正在写入的批次数
+     */
+    public int getInsertingBatches() {
+        MilvusBulkWriter.Session current = session;
+        return current == null ? 0 : current.getPendingBatches();
+    }
+
+    /**
+     * 各阶段进度 队列深度和平均吞吐
+     */
+    public String progress() {
+        double seconds = Math.max(0.001, (System.currentTimeMillis() - startTime) / 1000.0);
+        return String.format("任务 %s 耗时 %.1fs | 分块 文件 %d/%d 进行中 %d, %.1f 文件/s"
+                        + " | 向量化 队列 %d 文件 %d 块, 已完成 %d, %.1f 块/s"
+                        + " | 写入 在途 %d 批, 已完成 %d, %.1f 块/s",
+                id, seconds,
+                splitFiles.get(), files.get(), getSplitting(), splitFiles.get() / seconds,
+                queue.size(), queuedChunks.get(), embedded.get(), embedded.get() / seconds,
+                getInsertingBatches(), getInserted(), getInserted() / seconds);
+    }
+
+    void setSession(MilvusBulkWriter.Session session) {
+        this.session = session;
+    }
+
+    /**
+     * 记录第一个异常并取消任务
+     */
+    void fail(Throwable e) {
+        if (error == null) {
+            error = e;
+        }
+        cancelled = true;
+    }
+
+    /**
+     * 获取分块许可 同时分块的文件数达到上限时阻塞 任务取消后返回false
+     */
+    boolean acquireSplit() throws InterruptedException {
+        while (!cancelled) {
+            if (splitPermits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void releaseSplit() {
+        splitPermits.release();
+    }
+
+    /**
+     * 放入队列 队列满时阻塞 任务取消后放弃并返回false
+     */
+    boolean put(List<SplitChunk> fileChunks) throws InterruptedException {
+        while (!cancelled) {
+            if (queue.offer(fileChunks, 100, TimeUnit.MILLISECONDS)) {
+                queuedChunks.addAndGet(fileChunks.size());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从队列取出分块 把队列中已有的文件合并到同一批 直到达到maxChunks
+     * 收到结束标记或任务取消时返回null 结束标记前已取出的分块会先返回
+     */
+    List<SplitChunk> takeBatch(int maxChunks) throws InterruptedException {
+        List<SplitChunk> batch = null;
+        while (!cancelled && batch == null) {
+            List<SplitChunk> fileChunks = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (fileChunks == END) {
+                return null;
+            }
+            if (fileChunks != null) {
+                batch = new ArrayList<>(fileChunks);
+            }
+        }
+        if (batch == null) {
+            return null;
+        }
+
+        while (batch.size() < maxChunks) {
+            List<SplitChunk> next = queue.poll();
+            if (next == null) {
+                break;
+            }
+            if (next == END) {
+                // 结束标记之后不会再有分块 放回去留给下一次取
+                // 刚取出一个元素 之后只有其他消费者放回各自的结束标记 队列一定有空位 put不会阻塞
+                queue.put(END);
+                break;
+            }
+            batch.addAll(next);
+        }
+        queuedChunks.addAndGet(-batch.size());
+        return batch;
+    }
+
+    /**
+     * 按任务状态结束future
+     */
+    void finish() {
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else if (cancelled) {
+            future.completeExceptionally(new CancellationException("任务 " + id + " 已取消"));
+        } else {
+            future.complete(null);
+        }
+    }
+}
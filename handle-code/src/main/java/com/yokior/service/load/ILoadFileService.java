@@ -1,5 +1,7 @@
 package com.yokior.service.load;
 
+import java.nio.file.FileSystem;
+
 /**
  * @author Yokior
  * @description
@@ -15,4 +17,22 @@ public interface ILoadFileService {
      */
     String unzipAndSaveFile(String filePath);
 
+    /**
+     * 解压并保存文件
+     *
+     * @param filePath 文件路径
+     * @param javaOnly 只解压.java文件 只需要导入源码时可以跳过资源、依赖等其他文件
+     * @return 加载结果
+     */
+    String unzipAndSaveFile(String filePath, boolean javaOnly);
+
+    /**
+     * 以只读文件系统的方式打开压缩包 不解压
+     * 条目名编码与解压时的识别方式相同 使用完需要关闭
+     *
+     * @param filePath 压缩包路径
+     * @return 压缩包文件系统
+     */
+    FileSystem openZip(String filePath);
+
 }
@@ -1,12 +1,19 @@
 package com.yokior.service.load;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.*;
-import java.util.Enumeration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
 /**
@@ -15,12 +22,28 @@ import java.util.zip.ZipFile;
  * @date 2026/1/8 16:10
  */
 @Service
+@Slf4j
 public class LoadFileServiceImpl implements ILoadFileService {
 
     private static final String ROOT_PATH = System.getProperty("java.io.tmpdir");
 
+    // 条目名可能使用的编码 按顺序尝试
+    private static final String[] ENCODINGS = {"UTF-8", "GBK", "GB2312", "ISO-8859-1"};
+
+    // 单个条目复制时的最大缓冲区
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    @Qualifier("unzipExecutor")
+    private Executor unzipExecutor;
+
     @Override
     public String unzipAndSaveFile(String filePath) {
+        return unzipAndSaveFile(filePath, false);
+    }
+
+    @Override
+    public String unzipAndSaveFile(String filePath, boolean javaOnly) {
         if (filePath == null || filePath.trim().isEmpty()) {
             throw new IllegalArgumentException("文件路径不能为空");
         }
@@ -33,13 +56,35 @@ public class LoadFileServiceImpl implements ILoadFileService {
         // 判断是否是压缩包
         if (isZipFile(path)) {
             // 解压到ROOT_PATH下
-            String extractedDir = unzipFile(path, ROOT_PATH);
+            String extractedDir = unzipFile(path, ROOT_PATH, javaOnly);
             return extractedDir;
         } else {
             throw new IllegalArgumentException("文件不是压缩包格式: " + filePath);
         } 
     }
 
+    @Override
+    public FileSystem openZip(String filePath) {
+        if (filePath == null || filePath.trim().isEmpty()) {
+            throw new IllegalArgumentException("文件路径不能为空");
+        }
+
+        Path path = Paths.get(filePath);
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("文件不存在: " + filePath);
+        }
+        if (!isZipFile(path)) {
+            throw new IllegalArgumentException("文件不是压缩包格式: " + filePath);
+        }
+
+        try {
+            Charset charset = detectCharset(path);
+            return FileSystems.newFileSystem(path, Map.of("encoding", charset.name()));
+        } catch (IOException e) {
+            throw new RuntimeException("打开压缩包失败: " + filePath, e);
+        }
+    }
+
     /**
      * 判断文件是否是ZIP格式
      */
@@ -61,7 +106,7 @@ public class LoadFileServiceImpl implements ILoadFileService {
     /**
      * 解压ZIP文件到指定目录
      */
-    private String unzipFile(Path zipPath, String destDir) {
+    private String unzipFile(Path zipPath, String destDir, boolean javaOnly) {
         // 获取压缩文件名（不含扩展名）作为解压目录名
         String fileName = zipPath.getFileName().toString();
         String extractedDirName = fileName.substring(0, fileName.lastIndexOf('.'));
@@ -83,100 +128,126 @@ public class LoadFileServiceImpl implements ILoadFileService {
             throw new RuntimeException("创建解压目录失败: " + extractedDir, e);
         }
 
-        // 尝试多种编码方式
-        String[] encodings = {"UTF-8", "GBK", "GB2312", "ISO-8859-1"};
-        Exception lastException = null;
-
-        for (String encoding : encodings) {
+        long startTime = System.currentTimeMillis();
+        try {
+            // 只读取中央目录确定条目名编码 不再按每种编码重复解压
+            Charset charset = detectCharset(zipPath);
+            int count = unzipWithEncoding(zipPath, extractedDir, charset, javaOnly);
+            log.debug("解压 {} 完成，编码 {}，共 {} 个文件，耗时 {}ms",
+                    fileName, charset, count, System.currentTimeMillis() - startTime);
+            return extractedDir.toString();
+        } catch (Exception e) {
+            // 清理部分解压的结果
             try {
-                unzipWithEncoding(zipPath, extractedDir.toString(), encoding);
-                return extractedDir.toString(); // 解压成功，返回目录路径
-            } catch (Exception e) {
-                lastException = e;
-                // 清理可能的部分解压结果
-                try {
-                    cleanUpPartialExtraction(extractedDir.toString());
-                } catch (IOException cleanupEx) {
-                    // 清理失败，继续尝试下一种编码
-                }
+                deleteDirectory(extractedDir);
+            } catch (IOException cleanupEx) {
+                // 忽略删除失败
             }
+            throw new RuntimeException("解压文件失败: " + zipPath, e);
         }
+    }
 
-        // 所有编码都失败，抛出最后一个异常
-        throw new RuntimeException("解压文件失败，尝试了所有编码方式", lastException);
+    /**
+     * 确定条目名的编码
+     * 条目名全部能按该编码解码即认为正确 设置了UTF-8标志的条目总是按UTF-8解码
+     */
+    private Charset detectCharset(Path zipPath) throws IOException {
+        IOException lastException = null;
+        for (String encoding : ENCODINGS) {
+            Charset charset = Charset.forName(encoding);
+            try (ZipFile zipFile = new ZipFile(zipPath.toFile(), charset)) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    entries.nextElement();
+                }
+                return charset;
+            } catch (ZipException e) {
+                lastException = e;
+            } catch (IllegalArgumentException e) {
+                lastException = new ZipException(e.getMessage());
+            }
+        }
+        throw new IOException("无法识别压缩包条目名的编码", lastException);
     }
 
     /**
      * 使用指定编码解压ZIP文件
+     * 先在当前线程创建目录 再把各个文件条目交给线程池并行解压
+     *
+     * @param javaOnly 只解压.java文件
+     * @return 解压的文件数
      */
-    private void unzipWithEncoding(Path zipPath, String destDir, String encoding) throws IOException {
-        Charset charset = Charset.forName(encoding);
+    private int unzipWithEncoding(Path zipPath, Path destDir, Charset charset, boolean javaOnly) throws IOException {
+        Path root = destDir.normalize();
         try (ZipFile zipFile = new ZipFile(zipPath.toFile(), charset)) {
-            Enumeration<? extends ZipEntry> entries = zipFile.entries();
-            byte[] buffer = new byte[1024];
+            List<ZipEntry> fileEntries = new ArrayList<>();
+            List<Path> targets = new ArrayList<>();
+            Set<Path> dirs = new LinkedHashSet<>();
 
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
             while (entries.hasMoreElements()) {
                 ZipEntry entry = entries.nextElement();
-                Path entryPath = Paths.get(destDir, entry.getName());
+                Path entryPath = root.resolve(entry.getName()).normalize();
 
                 // 防止Zip Slip攻击
-                if (!entryPath.normalize().startsWith(Paths.get(destDir).normalize())) {
+                if (!entryPath.startsWith(root)) {
                     throw new IOException("非法的ZIP条目路径: " + entry.getName());
                 }
 
                 if (entry.isDirectory()) {
-                    Files.createDirectories(entryPath);
-                } else {
-                    // 确保父目录存在
-                    Files.createDirectories(entryPath.getParent());
-                    try (InputStream is = zipFile.getInputStream(entry);
-                         OutputStream fos = Files.newOutputStream(entryPath)) {
-                        int len;
-                        while ((len = is.read(buffer)) > 0) {
-                            fos.write(buffer, 0, len);
-                        }
+                    if (!javaOnly) {
+                        dirs.add(entryPath);
                     }
+                } else if (!javaOnly || entry.getName().endsWith(".java")) {
+                    dirs.add(entryPath.getParent());
+                    fileEntries.add(entry);
+                    targets.add(entryPath);
                 }
             }
-        }
-    }
 
-    /**
-     * 清理部分解压的结果
-     */
-    private void cleanUpPartialExtraction(String destDir) throws IOException {
-        Path dir = Paths.get(destDir);
-        if (Files.exists(dir)) {
-            // 这里只清理空目录，避免误删其他文件
-            // 实际项目中可能需要更复杂的清理逻辑
-            try (var stream = java.nio.file.Files.list(dir)) {
-                stream.filter(path -> {
-                            try {
-                                return Files.isDirectory(path) && isEmptyDirectory(path);
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        })
-                     .forEach(path -> {
-                         try {
-                             deleteDirectory(path);
-                         } catch (IOException e) {
-                             // 忽略删除失败
-                         }
-                     });
+            for (Path dir : dirs) {
+                Files.createDirectories(dir);
             }
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>(fileEntries.size());
+            for (int i = 0; i < fileEntries.size(); i++) {
+                ZipEntry entry = fileEntries.get(i);
+                Path target = targets.get(i);
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        copyEntry(zipFile, entry, target);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, unzipExecutor));
+            }
+
+            // 等待全部条目结束后才能关闭ZipFile
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                throw e;
+            }
+            return fileEntries.size();
         }
     }
 
     /**
-     * 判断目录是否为空
+     * 解压单个条目 ZipFile支持多个线程同时读取不同条目
      */
-    private boolean isEmptyDirectory(Path path) throws IOException {
-        if (!Files.isDirectory(path)) {
-            return false;
-        }
-        try (var stream = java.nio.file.Files.list(path)) {
-            return !stream.findAny().isPresent();
+    private void copyEntry(ZipFile zipFile, ZipEntry entry, Path target) throws IOException {
+        long size = entry.getSize();
+        int bufferSize = size >= 0 ? (int) Math.max(512, Math.min(BUFFER_SIZE, size)) : BUFFER_SIZE;
+        byte[] buffer = new byte[bufferSize];
+        try (InputStream is = zipFile.getInputStream(entry);
+             OutputStream fos = Files.newOutputStream(target)) {
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                fos.write(buffer, 0, len);
+            }
         }
     }
 
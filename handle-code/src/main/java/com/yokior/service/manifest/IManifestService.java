@@ -0,0 +1,27 @@
+package com.yokior.service.manifest;
+
+import com.yokior.common.ProjectManifest;
+
+/**
+ * @author Yokior
+ * @description
+ * @date 2026/3/3 10:20
+ */
+public interface IManifestService {
+
+    /**
+     * 加载项目清单
+     *
+     * @param projectName 项目名
+     * @return 清单不存在时返回null
+     */
+    ProjectManifest load(String projectName);
+
+    /**
+     * 保存项目清单
+     *
+     * @param manifest 清单
+     */
+    void save(ProjectManifest manifest);
+
+}
@@ -0,0 +1,62 @@
+package com.yokior.service.manifest;
+
+import com.alibaba.fastjson2.JSON;
+import com.yokior.common.ProjectManifest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * @author Yokior
+ * @description 项目清单存储 每个项目一个JSON文件
+ * @date 2026/3/3 10:20
+ */
+@Service
+@Slf4j
+public class ManifestServiceImpl implements IManifestService {
+
+    @Value("${ingest.manifest-dir:}")
+    private String manifestDir;
+
+    @Override
+    public ProjectManifest load(String projectName) {
+        Path file = resolve(projectName);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return JSON.parseObject(Files.readString(file, StandardCharsets.UTF_8), ProjectManifest.class);
+        } catch (Exception e) {
+            log.warn("读取项目清单 {} 失败，按首次导入处理: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void save(ProjectManifest manifest) {
+        Path file = resolve(manifest.getProjectName());
+        try {
+            Files.createDirectories(file.getParent());
+            // 先写临时文件再替换 避免写到一半留下损坏的清单
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, JSON.toJSONString(manifest), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("保存项目清单失败: " + file, e);
+        }
+    }
+
+    private Path resolve(String projectName) {
+        Path dir = manifestDir == null || manifestDir.isBlank()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "java-ai-helper", "manifest")
+                : Paths.get(manifestDir);
+        return dir.resolve(projectName + ".json");
+    }
+}
@@ -1,6 +1,7 @@
 package com.yokior.service.milvus;
 
 import com.yokior.common.EmbedSearchResult;
+import com.yokior.common.SearchProjection;
 import com.yokior.common.SplitChunk;
 
 import java.util.List;
@@ -16,6 +17,8 @@ public interface IMilvusService {
     /**
      * 插入数据
      */
+    void insert(float[] vector, String content, String type, String site, String project_name, String className, String methodName);
+
     void insert(List<Float> vector, String content, String type, String site, String project_name, String className, String methodName);
 
     void insert(SplitChunk splitChunk);
@@ -27,9 +30,73 @@ public interface IMilvusService {
 
     void batchInsert(List<SplitChunk> splitChunks);
 
+    List<EmbedSearchResult> search(float[] vector, int topK);
+
+    List<EmbedSearchResult> search(float[] vector, int topK, String expr);
+
+    List<EmbedSearchResult> search(float[] vector, int topK, String expr, Map<String, Object> params);
+
+    /**
+     * 搜索
+     *
+     * @param projection 返回的字段 LEAN不返回content 需要时再调用hydrate补充
+     */
+    List<EmbedSearchResult> search(float[] vector, int topK, String expr, Map<String, Object> params, SearchProjection projection);
+
     List<EmbedSearchResult> search(List<Float> vector, int topK);
 
     List<EmbedSearchResult> search(List<Float> vector, int topK, String expr);
 
     List<EmbedSearchResult> search(List<Float> vector, int topK, String expr, Map<String, Object> params);
+
+    /**
+     * 在指定项目内搜索
+     * project_name是分区键 只搜索该项目所在的分区，耗时取决于项目大小而不是集合总量
+     *
+     * @param projectName 项目名 为空时搜索全部项目
+     * @param expr 额外的过滤表达式 可为空
+     */
+    List<EmbedSearchResult> searchInProject(String projectName, float[] vector, int topK, String expr);
+
+    List<EmbedSearchResult> searchInProject(String projectName, float[] vector, int topK, String expr, Map<String, Object> params);
+
+    /**
+     * 批量搜索 多个查询向量在一次请求中搜索
+     *
+     * @param vectors 查询向量
+     * @param expr 过滤表达式 对所有查询生效 可为空
+     * @return 与vectors顺序一一对应的搜索结果
+     */
+    List<List<EmbedSearchResult>> searchBatch(List<float[]> vectors, int topK, String expr);
+
+    List<List<EmbedSearchResult>> searchBatch(List<float[]> vectors, int topK, String expr, Map<String, Object> params);
+
+    List<List<EmbedSearchResult>> searchBatch(List<float[]> vectors, int topK, String expr, Map<String, Object> params, SearchProjection projection);
+
+    /**
+     * 在指定项目内批量搜索
+     *
+     * @param projectName 项目名 为空时搜索全部项目
+     */
+    List<List<EmbedSearchResult>> searchBatchInProject(String projectName, List<float[]> vectors, int topK, String expr);
+
+    List<List<EmbedSearchResult>> searchBatchInProject(String projectName, List<float[]> vectors, int topK, String expr, SearchProjection projection);
+
+    /**
+     * 按id查询并补充搜索结果中缺少的content 已有content的结果不会重复查询
+     *
+     * @param results LEAN模式的搜索结果 会直接修改其中的content
+     * @return 传入的results
+     */
+    List<EmbedSearchResult> hydrate(List<EmbedSearchResult> results);
+
+    /**
+     * 删除项目的全部分片
+     */
+    void deleteByProject(String projectName);
+
+    /**
+     * 删除项目中指定位置（文件）的分片
+     */
+    void deleteBySites(String projectName, List<String> sites);
 }
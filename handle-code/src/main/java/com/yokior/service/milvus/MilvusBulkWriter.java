@@ -0,0 +1,352 @@
+package com.yokior.service.milvus;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.yokior.common.SplitChunk;
+import com.yokior.config.IngestConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Yokior
+ * @description Milvus批量写入
+ *
+ * 分片先进入会话的缓冲区，满一批或等待超过linger时间后提交到insertExecutor写入
+ * 所有会话共享同一个信号量限制在途批次数，在途批次满时add阻塞调用方，形成背压
+ * 定时线程只在有空闲名额时提交超时的缓冲区，没有名额时留到下一次检查，不阻塞定时线程
+ *
+ * 用法：
+ * try (MilvusBulkWriter.Session session = bulkWriter.open(projectName)) {
+ *     session.addAll(chunks);
+ * }
+ * 有批次写入失败后，之后的add立即抛出异常；close时写入剩余分片并等待所有批次完成，有批次失败时抛出异常
+ *
+ * @date 2026/3/5 10:20
+ */
+@Component
+@Slf4j
+public class MilvusBulkWriter {
+
+    private final IMilvusService milvusService;
+
+    private final Executor insertExecutor;
+
+    private final int batchSize;
+
+    private final long lingerMs;
+
+    // 限制同时在途的写入批次 所有会话共享
+    private final Semaphore inFlight;
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    // 定时检查各会话缓冲区是否超过linger时间
+    private final ScheduledExecutorService lingerScheduler;
+
+    public MilvusBulkWriter(IMilvusService milvusService,
+                            IngestConfig ingestConfig,
+                            @Qualifier("insertExecutor") Executor insertExecutor) {
+        this.milvusService = milvusService;
+        this.insertExecutor = insertExecutor;
+        this.batchSize = Math.max(1, ingestConfig.getInsertBatchSize());
+        this.lingerMs = Math.max(1, ingestConfig.getInsertLingerMs());
+        this.inFlight = new Semaphore(Math.max(1, ingestConfig.getInsertConcurrency()));
+        this.lingerScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("insert-linger-%d").setDaemon(true).build());
+
+        long period = Math.max(1, lingerMs / 2);
+        lingerScheduler.scheduleAtFixedRate(this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 打开一个写入会话
+     *
+     * @param name 会话名称 用于日志
+     */
+    public Session open(String name) {
+        Session session = new Session(name);
+        sessions.add(session);
+        return session;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lingerScheduler.shutdownNow();
+    }
+
+    private void flushExpired() {
+        long now = System.currentTimeMillis();
+        for (Session session : sessions) {
+            try {
+                session.flushIfExpired(now);
+            } catch (Exception e) {
+                log.error("会话 {} 定时写入失败", session.name, e);
+            }
+        }
+    }
+
+    private void acquire() {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 写入会话 线程安全 多个生产者可以同时add
+     */
+    public class Session implements AutoCloseable {
+
+        private final String name;
+
+        private List<SplitChunk> buffer = new ArrayList<>(batchSize);
+
+        // 缓冲区中第一个分片加入的时间
+        private long firstAddedAt;
+
+        private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong failedBatches = new AtomicLong();
+        private final AtomicLong totalLatencyMs = new AtomicLong();
+        private final AtomicLong maxLatencyMs = new AtomicLong();
+
+        private volatile Throwable firstError;
+
+        private boolean closed;
+
+        private Session(String name) {
+            this.name = name;
+        }
+
+        public void add(SplitChunk chunk) {
+            Batch full = null;
+            synchronized (this) {
+                checkOpen();
+                if (buffer.isEmpty()) {
+                    firstAddedAt = System.currentTimeMillis();
+                }
+                buffer.add(chunk);
+                if (buffer.size() >= batchSize) {
+                    full = swapBuffer();
+                }
+            }
+            if (full != null) {
+                submit(full);
+            }
+        }
+
+        public void addAll(List<SplitChunk> chunks) {
+            for (SplitChunk chunk : chunks) {
+                add(chunk);
+            }
+        }
+
+        /**
+         * 立即提交缓冲区中的分片 不等待写入完成
+         */
+        public void flush() {
+            Batch rest;
+            synchronized (this) {
+                rest = swapBuffer();
+            }
+            if (rest != null) {
+                submit(rest);
+            }
+        }
+
+        /**
+         * 丢弃缓冲区中还没提交的分块 已提交的批次不受影响
+         *
+         * @return 丢弃的分块数
+         */
+        public int discard() {
+            int discarded;
+            synchronized (this) {
+                discarded = buffer.size();
+                buffer = new ArrayList<>(batchSize);
+            }
+            if (discarded > 0) {
+                log.debug("会话 {} 丢弃 {} 条未提交的分片", name, discarded);
+            }
+            return discarded;
+        }
+
+        private void flushIfExpired(long now) {
+            synchronized (this) {
+                if (buffer.isEmpty() || now - firstAddedAt < lingerMs) {
+                    return;
+                }
+            }
+            if (!inFlight.tryAcquire()) {
+                return;
+            }
+            Batch rest;
+            synchronized (this) {
+                rest = swapBuffer();
+            }
+            if (rest == null) {
+                // 检查之后缓冲区已经被add或flush取走
+                inFlight.release();
+                return;
+            }
+            execute(rest);
+        }
+
+        /**
+         * 取出缓冲区 并在锁内登记到pending 保证close时能等到这一批
+         */
+        private Batch swapBuffer() {
+            if (buffer.isEmpty()) {
+                return null;
+            }
+            Batch batch = new Batch(buffer, new CompletableFuture<>());
+            buffer = new ArrayList<>(batchSize);
+            pending.add(batch.done);
+            batch.done.whenComplete((v, e) -> pending.remove(batch.done));
+            return batch;
+        }
+
+        /**
+         * 记录失败后再结束future 保证close等待结束时错误已可见
+         */
+        private void fail(Batch batch, Throwable e) {
+            failedBatches.incrementAndGet();
+            if (firstError == null) {
+                firstError = e;
+            }
+            log.error("会话 {} 写入 {} 条失败", name, batch.chunks.size(), e);
+            batch.done.completeExceptionally(e);
+        }
+
+        /**
+         * 提交一批写入
+         * 在途批次已满时阻塞 直到有批次完成
+         */
+        private void submit(Batch batch) {
+            try {
+                acquire();
+            } catch (RuntimeException e) {
+                fail(batch, e);
+                throw e;
+            }
+            execute(batch);
+        }
+
+        /**
+         * 交给insertExecutor写入 调用前已经获取了在途名额
+         */
+        private void execute(Batch batch) {
+            long submitTime = System.currentTimeMillis();
+            try {
+                insertExecutor.execute(() -> {
+                    long startTime = System.currentTimeMillis();
+                    try {
+                        milvusService.batchInsert(batch.chunks);
+                        long latency = System.currentTimeMillis() - startTime;
+                        record(batch.chunks.size(), latency);
+                        log.debug("会话 {} 写入 {} 条, 耗时 {}ms, 排队 {}ms, 在途 {}",
+                                name, batch.chunks.size(), latency, startTime - submitTime, pending.size());
+                        batch.done.complete(null);
+                    } catch (Throwable e) {
+                        fail(batch, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.release();
+                fail(batch, e);
+                throw e;
+            }
+        }
+
+        private void record(int size, long latency) {
+            batches.incrementAndGet();
+            rows.addAndGet(size);
+            totalLatencyMs.addAndGet(latency);
+            maxLatencyMs.accumulateAndGet(latency, Math::max);
+        }
+
+        /**
+         * 已关闭或已有批次写入失败时抛出异常 调用方停止生产 不再继续向量化后面的分片
+         */
+        public void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("写入会话 " + name + " 已关闭");
+            }
+            if (firstError != null) {
+                throw new IllegalStateException("写入会话 " + name + " 有批次写入失败", firstError);
+            }
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        public long getBatches() {
+            return batches.get();
+        }
+
+        /**
+         * 已提交但还没写完的批次数
+         */
+        public int getPendingBatches() {
+            return pending.size();
+        }
+
+        public long getFailedBatches() {
+            return failedBatches.get();
+        }
+
+        public String stats() {
+            long count = batches.get();
+            return String.format("写入 %d 批 %d 条, 失败 %d 批, 平均耗时 %dms, 最大耗时 %dms",
+                    count, rows.get(), failedBatches.get(),
+                    count == 0 ? 0 : totalLatencyMs.get() / count, maxLatencyMs.get());
+        }
+
+        /**
+         * 写入剩余分片并等待所有批次完成
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            sessions.remove(this);
+            flush();
+
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+                    .exceptionally(e -> null)
+                    .join();
+            log.debug("会话 {} 结束, {}", name, stats());
+
+            if (firstError != null) {
+                throw new RuntimeException("会话 " + name + " 有 " + failedBatches.get() + " 批写入失败", firstError);
+            }
+        }
+
+        private record Batch(List<SplitChunk> chunks, CompletableFuture<Void> done) {
+        }
+    }
+}
@@ -3,16 +3,21 @@ package com.yokior.service.milvus;
 import com.alibaba.fastjson2.JSONObject;
 import com.alibaba.fastjson2.JSONWriter;
 import com.yokior.common.EmbedSearchResult;
+import com.yokior.common.SearchProjection;
 import com.yokior.common.SplitChunk;
+import com.yokior.config.MilvusIndexConfig;
 import com.yokior.utils.MilvusUtils;
-import io.milvus.v2.common.IndexParam;
+import io.milvus.v2.service.vector.response.QueryResp;
 import io.milvus.v2.service.vector.response.SearchResp;
+import org.apache.commons.lang3.ArrayUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * @author Yokior
@@ -25,16 +30,32 @@ public class MilvusServiceImpl implements IMilvusService {
     @Autowired
     private MilvusUtils milvusUtils;
 
+    @Autowired
+    private MilvusIndexConfig indexConfig;
+
     private static final String COLLECTION_NAME = "JavaProject";
 
+    @Override
+    public void insert(float[] vector, String content, String type, String site, String project_name, String className, String methodName) {
+        insert(SplitChunk.builder()
+                .vector(vector)
+                .content(content)
+                .type(type)
+                .site(site)
+                .projectName(project_name)
+                .className(className)
+                .methodName(methodName)
+                .build());
+    }
+
     @Override
     public void insert(List<Float> vector, String content, String type, String site, String project_name, String className, String methodName) {
-        milvusUtils.insert(COLLECTION_NAME, List.of(vector), List.of(content), List.of(type), List.of(site), project_name, List.of(className), List.of(methodName));
+        insert(ArrayUtils.toPrimitive(vector.toArray(new Float[0])), content, type, site, project_name, className, methodName);
     }
 
     @Override
     public void insert(SplitChunk splitChunk) {
-        milvusUtils.insert(COLLECTION_NAME, List.of(splitChunk.getVector()), List.of(splitChunk.getContent()), List.of(splitChunk.getType()), List.of(splitChunk.getSite()), splitChunk.getProjectName(), List.of(splitChunk.getClassName()), List.of(splitChunk.getMethodName()));
+        milvusUtils.insertChunks(COLLECTION_NAME, List.of(splitChunk));
     }
 
     @Override
@@ -44,84 +65,189 @@ public class MilvusServiceImpl implements IMilvusService {
 
     @Override
     public void batchInsert(List<SplitChunk> splitChunks) {
-        milvusUtils.insert(COLLECTION_NAME, splitChunks.stream().map(SplitChunk::getVector).toList(), splitChunks.stream().map(SplitChunk::getContent).toList(), splitChunks.stream().map(SplitChunk::getType).toList(), splitChunks.stream().map(SplitChunk::getSite).toList(), splitChunks.get(0).getProjectName(), splitChunks.stream().map(SplitChunk::getClassName).toList(), splitChunks.stream().map(SplitChunk::getMethodName).toList());
+        if (!milvusUtils.insertChunks(COLLECTION_NAME, splitChunks)) {
+            throw new RuntimeException("插入 " + splitChunks.size() + " 个分片失败");
+        }
     }
 
     @Override
-    public List<EmbedSearchResult> search(List<Float> vector, int topK) {
+    public List<EmbedSearchResult> search(float[] vector, int topK) {
+        return search(vector, topK, null, null);
+    }
 
-        SearchResp searchResp = milvusUtils.search("JavaProject", List.of(vector), topK, IndexParam.MetricType.COSINE);
+    @Override
+    public List<EmbedSearchResult> search(float[] vector, int topK, String expr) {
+        return search(vector, topK, expr, null);
+    }
 
-        // 封装结果
-        List<EmbedSearchResult> embedSearchResultList = new ArrayList<>();
+    @Override
+    public List<EmbedSearchResult> search(float[] vector, int topK, String expr, Map<String, Object> params) {
+        return search(vector, topK, expr, params, SearchProjection.FULL);
+    }
 
-        for (SearchResp.SearchResult data : searchResp.getSearchResults().get(0)) {
-            EmbedSearchResult embedSearchResult = new EmbedSearchResult();
-            Map<String, Object> entity = data.getEntity();
-            embedSearchResult.setId((Long) data.getId());
-            embedSearchResult.setScore(data.getScore());
-            embedSearchResult.setContent((String) entity.get("content"));
-            embedSearchResult.setType((String) entity.get("type"));
-            embedSearchResult.setClassName((String) entity.get("class_name"));
-            embedSearchResult.setMethodName((String) entity.get("method_name"));
-            embedSearchResult.setSite((String) entity.get("site"));
-            embedSearchResult.setProjectName((String) entity.get("project_name"));
-
-            embedSearchResultList.add(embedSearchResult);
-        }
+    @Override
+    public List<EmbedSearchResult> search(float[] vector, int topK, String expr, Map<String, Object> params, SearchProjection projection) {
+        return searchBatch(List.of(vector), topK, expr, params, projection).get(0);
+    }
 
-        return embedSearchResultList;
+    @Override
+    public List<EmbedSearchResult> search(List<Float> vector, int topK) {
+        return search(ArrayUtils.toPrimitive(vector.toArray(new Float[0])), topK);
     }
 
     @Override
     public List<EmbedSearchResult> search(List<Float> vector, int topK, String expr) {
+        return search(ArrayUtils.toPrimitive(vector.toArray(new Float[0])), topK, expr);
+    }
 
-        SearchResp searchResp = milvusUtils.search("JavaProject", List.of(vector), topK, IndexParam.MetricType.COSINE, expr);
+    @Override
+    public List<EmbedSearchResult> search(List<Float> vector, int topK, String expr, Map<String, Object> params) {
+        return search(ArrayUtils.toPrimitive(vector.toArray(new Float[0])), topK, expr, params);
+    }
 
-        // 封装结果
-        List<EmbedSearchResult> embedSearchResultList = new ArrayList<>();
+    @Override
+    public List<EmbedSearchResult> searchInProject(String projectName, float[] vector, int topK, String expr) {
+        return search(vector, topK, projectScope(projectName, expr));
+    }
 
-        for (SearchResp.SearchResult data : searchResp.getSearchResults().get(0)) {
-            EmbedSearchResult embedSearchResult = new EmbedSearchResult();
-            Map<String, Object> entity = data.getEntity();
-            embedSearchResult.setId((Long) data.getId());
-            embedSearchResult.setScore(data.getScore());
-            embedSearchResult.setContent((String) entity.get("content"));
-            embedSearchResult.setType((String) entity.get("type"));
-            embedSearchResult.setClassName((String) entity.get("class_name"));
-            embedSearchResult.setMethodName((String) entity.get("method_name"));
-            embedSearchResult.setSite((String) entity.get("site"));
-            embedSearchResult.setProjectName((String) entity.get("project_name"));
-
-            embedSearchResultList.add(embedSearchResult);
+    @Override
+    public List<EmbedSearchResult> searchInProject(String projectName, float[] vector, int topK, String expr, Map<String, Object> params) {
+        return search(vector, topK, projectScope(projectName, expr), params);
+    }
+
+    @Override
+    public List<List<EmbedSearchResult>> searchBatch(List<float[]> vectors, int topK, String expr) {
+        return searchBatch(vectors, topK, expr, null);
+    }
+
+    @Override
+    public List<List<EmbedSearchResult>> searchBatch(List<float[]> vectors, int topK, String expr, Map<String, Object> params) {
+        return searchBatch(vectors, topK, expr, params, SearchProjection.FULL);
+    }
+
+    /**
+     * 所有搜索最终都走这里
+     * 使用当前索引方案的度量和默认搜索参数 params中的同名参数覆盖默认值
+     */
+    @Override
+    public List<List<EmbedSearchResult>> searchBatch(List<float[]> vectors, int topK, String expr, Map<String, Object> params, SearchProjection projection) {
+        if (vectors == null || vectors.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        return embedSearchResultList;
+        MilvusIndexConfig.IndexProfile profile = indexConfig.getActiveProfile();
+        SearchResp searchResp = milvusUtils.searchVectors(COLLECTION_NAME, vectors, topK, profile.getMetricType(), expr,
+                profile.mergeSearchParams(params, topK), projection.getOutputFields());
+        if (searchResp == null) {
+            throw new RuntimeException("批量搜索 " + vectors.size() + " 个向量失败");
+        }
+
+        // 每个查询向量对应一组结果
+        List<List<EmbedSearchResult>> resultList = new ArrayList<>(vectors.size());
+        for (List<SearchResp.SearchResult> results : searchResp.getSearchResults()) {
+            resultList.add(toResults(results));
+        }
+        return resultList;
     }
 
     @Override
-    public List<EmbedSearchResult> search(List<Float> vector, int topK, String expr, Map<String, Object> params) {
+    public List<List<EmbedSearchResult>> searchBatchInProject(String projectName, List<float[]> vectors, int topK, String expr) {
+        return searchBatch(vectors, topK, projectScope(projectName, expr));
+    }
 
-        SearchResp searchResp = milvusUtils.search("JavaProject", List.of(vector), topK, IndexParam.MetricType.COSINE, expr, params);
+    @Override
+    public List<List<EmbedSearchResult>> searchBatchInProject(String projectName, List<float[]> vectors, int topK, String expr, SearchProjection projection) {
+        return searchBatch(vectors, topK, projectScope(projectName, expr), null, projection);
+    }
+
+    @Override
+    public List<EmbedSearchResult> hydrate(List<EmbedSearchResult> results) {
+        List<Long> ids = new ArrayList<>();
+        for (EmbedSearchResult result : results) {
+            if (result.getContent() == null && result.getId() != null) {
+                ids.add(result.getId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return results;
+        }
 
-        // 封装结果
-        List<EmbedSearchResult> embedSearchResultList = new ArrayList<>();
+        String expr = ids.stream().map(String::valueOf).collect(Collectors.joining(", ", "id in [", "]"));
+        Map<Long, String> contents = new HashMap<>();
+        for (QueryResp.QueryResult queryResult : milvusUtils.query(COLLECTION_NAME, expr, List.of("content"))) {
+            Map<String, Object> entity = queryResult.getEntity();
+            contents.put((Long) entity.get("id"), (String) entity.get("content"));
+        }
 
-        for (SearchResp.SearchResult data : searchResp.getSearchResults().get(0)) {
-            EmbedSearchResult embedSearchResult = new EmbedSearchResult();
-            Map<String, Object> entity = data.getEntity();
-            embedSearchResult.setId((Long) data.getId());
-            embedSearchResult.setScore(data.getScore());
-            embedSearchResult.setContent((String) entity.get("content"));
-            embedSearchResult.setType((String) entity.get("type"));
-            embedSearchResult.setClassName((String) entity.get("class_name"));
-            embedSearchResult.setMethodName((String) entity.get("method_name"));
-            embedSearchResult.setSite((String) entity.get("site"));
-            embedSearchResult.setProjectName((String) entity.get("project_name"));
-
-            embedSearchResultList.add(embedSearchResult);
+        for (EmbedSearchResult result : results) {
+            if (result.getContent() == null && result.getId() != null) {
+                result.setContent(contents.get(result.getId()));
+            }
         }
+        return results;
+    }
 
+    /**
+     * 封装一个查询向量的搜索结果 未返回的字段为null
+     */
+    private static List<EmbedSearchResult> toResults(List<SearchResp.SearchResult> results) {
+        List<EmbedSearchResult> embedSearchResultList = new ArrayList<>(results.size());
+        for (SearchResp.SearchResult data : results) {
+            Map<String, Object> entity = data.getEntity();
+            embedSearchResultList.add(EmbedSearchResult.builder()
+                    .id((Long) data.getId())
+                    .score(data.getScore())
+                    .content((String) entity.get("content"))
+                    .type((String) entity.get("type"))
+                    .className((String) entity.get("class_name"))
+                    .methodName((String) entity.get("method_name"))
+                    .site((String) entity.get("site"))
+                    .projectName((String) entity.get("project_name"))
+                    .build());
+        }
         return embedSearchResultList;
     }
+
+    /**
+     * 在过滤表达式前加上项目条件 分区键的等值条件放在最前面
+     */
+    static String projectScope(String projectName, String expr) {
+        boolean hasExpr = expr != null && !expr.isBlank();
+        if (projectName == null || projectName.isBlank()) {
+            return hasExpr ? expr : null;
+        }
+        String scope = "project_name == " + quote(projectName);
+        return hasExpr ? scope + " && (" + expr + ")" : scope;
+    }
+
+    @Override
+    public void deleteByProject(String projectName) {
+        if (!milvusUtils.deleteByExpr(COLLECTION_NAME, "project_name == " + quote(projectName))) {
+            throw new RuntimeException("删除项目 " + projectName + " 的分片失败");
+        }
+    }
+
+    @Override
+    public void deleteBySites(String projectName, List<String> sites) {
+        if (sites == null || sites.isEmpty()) {
+            return;
+        }
+        // 分批删除 避免表达式过长
+        int batchSize = 100;
+        for (int i = 0; i < sites.size(); i += batchSize) {
+            String siteList = sites.subList(i, Math.min(i + batchSize, sites.size())).stream()
+                    .map(MilvusServiceImpl::quote)
+                    .collect(Collectors.joining(", ", "[", "]"));
+            if (!milvusUtils.deleteByExpr(COLLECTION_NAME, "project_name == " + quote(projectName) + " && site in " + siteList)) {
+                throw new RuntimeException("删除项目 " + projectName + " 的旧分片失败");
+            }
+        }
+    }
+
+    /**
+     * 转义为Milvus表达式中的字符串字面量
+     */
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
 }
@@ -24,4 +24,29 @@ public interface ISplitService {
 
     List<SplitChunk> loadAndSplit(Path filePath, String projectName) throws Exception;
 
+    /**
+     * 加载文件并分块
+     *
+     * @param filePath 文件路径
+     * @param projectRoot 项目根目录 分片的site为文件相对它的路径
+     * @param projectName 项目名
+     * @return
+     */
+    List<SplitChunk> loadAndSplit(Path filePath, Path projectRoot, String projectName) throws Exception;
+
+    /**
+     * 累计成功解析的文件数
+     */
+    long getParsedFiles();
+
+    /**
+     * 解析吞吐 按解析线程实际耗时计算的单核每秒文件数
+     */
+    double getParseFilesPerSecondPerCore();
+
+    /**
+     * 解析统计
+     */
+    String stats();
+
 }
@@ -1,22 +1,25 @@
 package com.yokior.service.split;
 
 import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
 import com.github.javaparser.ParseResult;
-import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.*;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
 import com.yokior.common.CodeFragmentType;
 import com.yokior.common.SplitChunk;
+import com.yokior.utils.CodeCompressor;
+import com.yokior.utils.SourceLoader;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Yokior
@@ -27,62 +30,85 @@ import java.util.*;
 @Slf4j
 public class SplitServiceImpl implements ISplitService {
 
+    /**
+     * 每个线程一个解析器 不再共用StaticJavaParser的全局配置
+     * 按Java 17语法解析；需要javadoc和方法体内的注释，保留注释归属（注释从token中收集，token存储不能关闭）；
+     * 不做修改后回写，关闭词法保留
+     */
+    private static final ThreadLocal<JavaParser> PARSER = ThreadLocal.withInitial(() -> new JavaParser(
+            new ParserConfiguration()
+                    .setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17)
+                    .setAttributeComments(true)
+                    .setLexicalPreservationEnabled(false)));
+
+    /**
+     * 每个线程复用一个切分器 切分前重置状态
+     */
+    private static final ThreadLocal<CodeSplitter> SPLITTER = ThreadLocal.withInitial(CodeSplitter::new);
+
+    // 解析统计
+    private final AtomicLong parsedFiles = new AtomicLong();
+    private final AtomicLong parsedBytes = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
 
 
     @Override
     public List<SplitChunk> loadAndSplit(String filePath, String projectName) throws Exception {
-        return split(Paths.get(filePath), projectName);
+        Path path = Paths.get(filePath);
+        return split(path, SourceLoader.guessProjectRoot(path, projectName), projectName);
     }
 
     @Override
     public List<SplitChunk> loadAndSplit(Path filePath, String projectName) throws Exception {
-        return split(filePath, projectName);
+        return split(filePath, SourceLoader.guessProjectRoot(filePath, projectName), projectName);
+    }
+
+    @Override
+    public List<SplitChunk> loadAndSplit(Path filePath, Path projectRoot, String projectName) throws Exception {
+        return split(filePath, projectRoot, projectName);
     }
 
 
-    private List<SplitChunk> split(Path filePath, String projectName) throws Exception {
+    private List<SplitChunk> split(Path filePath, Path projectRoot, String projectName) throws Exception {
 
 //        // 从path中获取文件名去除.java作为类名
 //        String className = filePath.getFileName().toString().replace(".java", "");
 
-        // 去除路径前面的临时文件夹和项目名 site
-        String tempDir = System.getProperty("java.io.tmpdir");
-        String site = filePath.toString().substring(tempDir.length() + projectName.length() + 1);
+        // 文件相对项目根目录的位置 site
+        String site = SourceLoader.relativeSite(projectRoot, filePath);
         log.debug(site);
 
-        File file = filePath.toFile();
-        if (!file.exists()) {
+        if (!Files.exists(filePath)) {
             throw new Exception("文件不存在");
         }
 
-        try (FileInputStream in = new FileInputStream(file)) {
-            CompilationUnit parseResult = StaticJavaParser.parse(in);
+        CompilationUnit parseResult = parse(SourceLoader.load(filePath));
 
-            if (parseResult != null) {
-                // 创建代码切分器
-                CodeSplitter splitter = new CodeSplitter();
+        if (parseResult != null) {
+            // 当前线程的代码切分器
+            CodeSplitter splitter = SPLITTER.get();
 
-                // 切分并收集所有分片
-                List<CodeFragment> fragments = splitter.split(parseResult);
+            // 切分并收集所有分片
+            List<CodeFragment> fragments = splitter.split(parseResult);
 
-                // 输出每个分片的内容
+            // 输出每个分片的内容
 //                log.debug(className + " 类共切分成 " + fragments.size() + " 个分片:");
 
-                List<SplitChunk> chunkList = new ArrayList<>();
+            List<SplitChunk> chunkList = new ArrayList<>();
 
-                for (int i = 0; i < fragments.size(); i++) {
-                    CodeFragment fragment = fragments.get(i);
+            for (int i = 0; i < fragments.size(); i++) {
+                CodeFragment fragment = fragments.get(i);
 
-                    SplitChunk chunk = SplitChunk.builder()
-                            .projectName(projectName)
-                            .type(fragment.getType().getCode())
-                            .className(fragment.getClassName())
-                            .methodName(fragment.getMethodName())
-                            .site(site)
-                            .content(splitter.compressCode(fragment.getContent()))
-                            .build();
+                SplitChunk chunk = SplitChunk.builder()
+                        .projectName(projectName)
+                        .type(fragment.getType().getCode())
+                        .className(fragment.getClassName())
+                        .methodName(fragment.getMethodName())
+                        .site(site)
+                        .content(CodeCompressor.compress(fragment.getContent()))
+                        .build();
 
-                    chunkList.add(chunk);
+                chunkList.add(chunk);
 
 //                    System.out.println("\n【分片 " + (i + 1) + "】");
 //                    System.out.println("类型: " + fragment.getType());
@@ -90,17 +116,50 @@ public class SplitServiceImpl implements ISplitService {
 //                    System.out.println("方法名: " + fragment.getMethodName());
 //                    System.out.println("-".repeat(60));
 //                    System.out.println(fragment.getContent());
-//                    System.out.println(splitter.compressCode(fragment.getContent()));
+//                    System.out.println(CodeCompressor.compress(fragment.getContent()));
 //                    System.out.println("-".repeat(60));
-                }
-
-                return chunkList;
             }
+
+            return chunkList;
         }
 
         return new ArrayList<>();
     }
 
+    /**
+     * 使用当前线程的解析器解析 失败时与StaticJavaParser一样抛出ParseProblemException
+     */
+    private CompilationUnit parse(SourceLoader.Source source) {
+        long start = System.nanoTime();
+        ParseResult<CompilationUnit> result = PARSER.get().parse(source.reader());
+        parseNanos.addAndGet(System.nanoTime() - start);
+
+        if (!result.isSuccessful() || result.getResult().isEmpty()) {
+            throw new ParseProblemException(result.getProblems());
+        }
+        parsedFiles.incrementAndGet();
+        parsedBytes.addAndGet(source.bytes());
+        return result.getResult().get();
+    }
+
+    @Override
+    public long getParsedFiles() {
+        return parsedFiles.get();
+    }
+
+    @Override
+    public double getParseFilesPerSecondPerCore() {
+        long nanos = parseNanos.get();
+        return nanos == 0 ? 0 : parsedFiles.get() * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public String stats() {
+        long nanos = parseNanos.get();
+        return String.format("解析 %d 个文件 %dKB, 解析耗时 %dms, 单核 %.1f 文件/秒",
+                parsedFiles.get(), parsedBytes.get() / 1024, nanos / 1_000_000, getParseFilesPerSecondPerCore());
+    }
+
 
     private static class CodeFragment {
         private CodeFragmentType type; // 分片类型：使用枚举
@@ -153,9 +212,10 @@ public class SplitServiceImpl implements ISplitService {
 
         /**
          * 切分CompilationUnit并返回所有分片
+         * 返回的列表在下次切分时会被清空 需要在同一线程内先用完
          */
         public List<CodeFragment> split(CompilationUnit cu) {
-            fragments.clear();
+            reset();
 
             // 访问所有类型声明
             cu.accept(this, fragments);
@@ -163,6 +223,16 @@ public class SplitServiceImpl implements ISplitService {
             return fragments;
         }
 
+        /**
+         * 清空上一个文件留下的状态 与新建的切分器一致
+         */
+        private void reset() {
+            fragments.clear();
+            currentClassName = "";
+            fieldNames.clear();
+            fieldTypes.clear();
+        }
+
         @Override
         public void visit(ClassOrInterfaceDeclaration n, List<CodeFragment> fragments) {
             currentClassName = n.getNameAsString();
@@ -203,7 +273,7 @@ public class SplitServiceImpl implements ISplitService {
             String classOverviewContent = buildClassOverviewContent(n);
 
             // 使用压缩长度进行判断
-            int compressedLength = compressCode(classOverviewContent).length();
+            int compressedLength = CodeCompressor.compressedLength(classOverviewContent);
 //            log.debug("类概览原始长度: {}, 压缩后长度: {}", classOverviewContent.length(), compressedLength);
 
             if (compressedLength <= 1000) {
@@ -217,7 +287,7 @@ public class SplitServiceImpl implements ISplitService {
 
                 for (int i = 0; i < classChunks.size(); i++) {
                     String chunkContent = classChunks.get(i);
-                    int chunkCompressedLength = compressCode(chunkContent).length();
+                    int chunkCompressedLength = CodeCompressor.compressedLength(chunkContent);
 
                     if (chunkCompressedLength > 1000) {
                         log.warn("类概览分片 {} 压缩后长度仍超过1000字符: {}", i + 1, chunkCompressedLength);
@@ -244,7 +314,7 @@ public class SplitServiceImpl implements ISplitService {
          */
         private int calculateCompressedLength(String methodHeader, String bodyPrefix, String bodyContent) {
             String fullContent = methodHeader + bodyPrefix + "  " + bodyContent.replace("\n", "\n  ") + "\n";
-            return compressCode(fullContent).length();
+            return CodeCompressor.compressedLength(fullContent);
         }
 
         /**
@@ -283,7 +353,7 @@ public class SplitServiceImpl implements ISplitService {
                     // 需要切分，计算每个分片的最大压缩长度
                     // 预留方法头和"方法体(分段X):\n"的压缩长度
                     String sampleSegmentHeader = methodHeader.toString() + "方法体(分段1):\n";
-                    int segmentHeaderCompressedLength = compressCode(sampleSegmentHeader).length();
+                    int segmentHeaderCompressedLength = CodeCompressor.compressedLength(sampleSegmentHeader);
                     int maxCompressedBodyLength = 1000 - segmentHeaderCompressedLength - 20; // 留一些缓冲
 
                     log.debug("方法 {} 需要切分，每个分片最大压缩长度: {}", method.getName(), maxCompressedBodyLength);
@@ -298,7 +368,7 @@ public class SplitServiceImpl implements ISplitService {
 
                         // 验证分片压缩长度
                         String finalContent = content.toString();
-                        int finalCompressedLength = compressCode(finalContent).length();
+                        int finalCompressedLength = CodeCompressor.compressedLength(finalContent);
 
                         if (finalCompressedLength > 1000) {
                             log.warn("分片 {} 压缩后长度仍超过1000字符: {}", method.getNameAsString() + "_segment" + (i + 1), finalCompressedLength);
@@ -622,6 +692,8 @@ public class SplitServiceImpl implements ISplitService {
             String[] parts = classOverviewContent.split("(?=类定义:|类注解:|类注释:|类属性:|重要方法定义:|重要构造函数定义:)");
 
             StringBuilder currentChunk = new StringBuilder();
+            // 当前分片的压缩长度 每个部分只扫描一次
+            CodeCompressor.LengthCounter currentLength = new CodeCompressor.LengthCounter();
 
             for (String part : parts) {
                 // 跳过空部分
@@ -630,16 +702,16 @@ public class SplitServiceImpl implements ISplitService {
                 }
 
                 // 计算当前块加上新块的压缩长度
-                String testContent = currentChunk.toString() + part + "\n";
-                int testCompressedLength = compressCode(testContent).length();
+                int testCompressedLength = currentLength.lengthWith(part);
 
                 // 如果单个部分本身就超过限制，需要进一步切分
-                int partCompressedLength = compressCode(part).length();
+                int partCompressedLength = CodeCompressor.compressedLength(part);
                 if (partCompressedLength > maxCompressedLength) {
                     // 先保存当前分片（如果不为空）
                     if (currentChunk.length() > 0) {
                         chunks.add(currentChunk.toString());
                         currentChunk = new StringBuilder();
+                        currentLength = new CodeCompressor.LengthCounter();
                     }
                     // 对超长部分进行强制切分
                     List<String> subParts = forceSplitClassPart(part, maxCompressedLength);
@@ -649,8 +721,10 @@ public class SplitServiceImpl implements ISplitService {
                     if (testCompressedLength > maxCompressedLength && currentChunk.length() > 0) {
                         chunks.add(currentChunk.toString());
                         currentChunk = new StringBuilder();
+                        currentLength = new CodeCompressor.LengthCounter();
                     }
                     currentChunk.append(part).append("\n");
+                    currentLength.append(part);
                 }
             }
 
@@ -673,21 +747,25 @@ public class SplitServiceImpl implements ISplitService {
                 // 按字段切分
                 String[] lines = part.split("\n");
                 StringBuilder currentSubPart = new StringBuilder();
+                CodeCompressor.LengthCounter currentLength = new CodeCompressor.LengthCounter();
                 currentSubPart.append("类属性:\n");
+                currentLength.append("类属性:");
 
                 for (int i = 1; i < lines.length; i++) {
                     String line = lines[i];
 
                     // 测试添加当前行后的压缩长度
-                    String testContent = currentSubPart.toString() + line + "\n";
-                    int testCompressedLength = compressCode(testContent).length();
+                    int testCompressedLength = currentLength.lengthWith(line);
 
                     if (testCompressedLength > maxCompressedLength && currentSubPart.length() > 10) {
                         subParts.add(currentSubPart.toString());
                         currentSubPart = new StringBuilder();
+                        currentLength = new CodeCompressor.LengthCounter();
                         currentSubPart.append("类属性(续):\n");
+                        currentLength.append("类属性(续):");
                     }
                     currentSubPart.append(line).append("\n");
+                    currentLength.append(line);
                 }
 
                 if (currentSubPart.length() > 0) {
@@ -697,21 +775,26 @@ public class SplitServiceImpl implements ISplitService {
                 // 按方法切分
                 String[] lines = part.split("\n");
                 StringBuilder currentSubPart = new StringBuilder();
+                CodeCompressor.LengthCounter currentLength = new CodeCompressor.LengthCounter();
                 currentSubPart.append(lines[0]).append("\n"); // 保留标题行
+                currentLength.append(lines[0]);
 
                 for (int i = 1; i < lines.length; i++) {
                     String line = lines[i];
 
                     // 测试添加当前行后的压缩长度
-                    String testContent = currentSubPart.toString() + line + "\n";
-                    int testCompressedLength = compressCode(testContent).length();
+                    int testCompressedLength = currentLength.lengthWith(line);
 
                     if (testCompressedLength > maxCompressedLength && currentSubPart.length() > 10) {
                         subParts.add(currentSubPart.toString());
                         currentSubPart = new StringBuilder();
-                        currentSubPart.append(part.startsWith("重要方法定义:") ? "重要方法定义(续):\n" : "重要构造函数定义(续):\n");
+                        currentLength = new CodeCompressor.LengthCounter();
+                        String continuedTitle = part.startsWith("重要方法定义:") ? "重要方法定义(续):" : "重要构造函数定义(续):";
+                        currentSubPart.append(continuedTitle).append("\n");
+                        currentLength.append(continuedTitle);
                     }
                     currentSubPart.append(line).append("\n");
+                    currentLength.append(line);
                 }
 
                 if (currentSubPart.length() > 0) {
@@ -721,17 +804,19 @@ public class SplitServiceImpl implements ISplitService {
                 // 其他部分按行切分
                 String[] lines = part.split("\n");
                 StringBuilder currentSubPart = new StringBuilder();
+                CodeCompressor.LengthCounter currentLength = new CodeCompressor.LengthCounter();
 
                 for (String line : lines) {
                     // 测试添加当前行后的压缩长度
-                    String testContent = currentSubPart.toString() + line + "\n";
-                    int testCompressedLength = compressCode(testContent).length();
+                    int testCompressedLength = currentLength.lengthWith(line);
 
                     if (testCompressedLength > maxCompressedLength && currentSubPart.length() > 0) {
                         subParts.add(currentSubPart.toString());
                         currentSubPart = new StringBuilder();
+                        currentLength = new CodeCompressor.LengthCounter();
                     }
                     currentSubPart.append(line).append("\n");
+                    currentLength.append(line);
                 }
 
                 if (currentSubPart.length() > 0) {
@@ -760,19 +845,21 @@ public class SplitServiceImpl implements ISplitService {
 
             // 组合语义块，确保每个分片压缩后不超过maxCompressedLength字符
             StringBuilder currentChunk = new StringBuilder();
+            // 当前分片的压缩长度 每个语义块只扫描一次
+            CodeCompressor.LengthCounter currentLength = new CodeCompressor.LengthCounter();
 
             for (String block : semanticBlocks) {
                 // 计算当前块加上新块的压缩长度
-                String testContent = currentChunk.toString() + block + "\n";
-                int testCompressedLength = compressCode(testContent).length();
+                int testCompressedLength = currentLength.lengthWith(block);
 
                 // 如果单个语义块本身就超过限制，需要进一步切分
-                int blockCompressedLength = compressCode(block).length();
+                int blockCompressedLength = CodeCompressor.compressedLength(block);
                 if (blockCompressedLength > maxCompressedLength) {
                     // 先保存当前分片（如果不为空）
                     if (currentChunk.length() > 0) {
                         chunks.add(currentChunk.toString());
                         currentChunk = new StringBuilder();
+                        currentLength = new CodeCompressor.LengthCounter();
                     }
                     // 对超长块进行强制切分
                     List<String> subBlocks = forceSplitBlock(block, maxCompressedLength);
@@ -782,8 +869,10 @@ public class SplitServiceImpl implements ISplitService {
                     if (testCompressedLength > maxCompressedLength && currentChunk.length() > 0) {
                         chunks.add(currentChunk.toString());
                         currentChunk = new StringBuilder();
+                        currentLength = new CodeCompressor.LengthCounter();
                     }
                     currentChunk.append(block).append("\n");
+                    currentLength.append(block);
                 }
             }
 
@@ -802,17 +891,19 @@ public class SplitServiceImpl implements ISplitService {
             List<String> subBlocks = new ArrayList<>();
             String[] lines = block.split("\n");
             StringBuilder currentSubBlock = new StringBuilder();
+            CodeCompressor.LengthCounter currentLength = new CodeCompressor.LengthCounter();
 
             for (String line : lines) {
                 // 测试添加当前行后的压缩长度
-                String testContent = currentSubBlock.toString() + line + "\n";
-                int testCompressedLength = compressCode(testContent).length();
+                int testCompressedLength = currentLength.lengthWith(line);
 
                 if (testCompressedLength > maxCompressedLength && currentSubBlock.length() > 0) {
                     subBlocks.add(currentSubBlock.toString());
                     currentSubBlock = new StringBuilder();
+                    currentLength = new CodeCompressor.LengthCounter();
                 }
                 currentSubBlock.append(line).append("\n");
+                currentLength.append(line);
             }
 
             if (currentSubBlock.length() > 0) {
@@ -1231,38 +1322,6 @@ public class SplitServiceImpl implements ISplitService {
             return buildMemberDetailContent(clazz, null, constructor, method);
         }
 
-        /**
-         * 压缩代码，去除多余空行换行等无效字符
-         * @param code 原始代码
-         * @return 压缩后的代码
-         */
-        private String compressCode(String code) {
-            if (code == null || code.trim().isEmpty()) {
-                return code;
-            }
-
-            // 去除行首行尾空白
-            String[] lines = code.split("\n");
-            StringBuilder compressed = new StringBuilder();
-            boolean isEmptyLine = true;
-
-            for (String line : lines) {
-                String trimmedLine = line.trim();
-
-                // 非空行，去除多余空格
-                if (compressed.length() > 0 && !compressed.toString().endsWith("\n")) {
-                    compressed.append(" ");
-                }
-
-                // 压缩行内的多个空格为单个空格
-                trimmedLine = trimmedLine.replaceAll("\\s+", " ");
-                compressed.append(trimmedLine);
-                isEmptyLine = false;
-            }
-
-            return compressed.toString();
-        }
-
         // 以下是辅助方法，与ParserTest中的类似
 
         private void setCurrentClass(ClassOrInterfaceDeclaration clazz) {
@@ -0,0 +1,219 @@
+package com.yokior.utils;
+
+/**
+ * @author Yokior
+ * @description 代码压缩 去除多余空行换行等无效字符
+ *
+ * 一次扫描完成，不使用正则，也可以只计算压缩后的长度而不构建字符串
+ * 结果与原先的实现完全一致：
+ * 按\n分行（末尾的空行丢弃），每行去掉首尾空白后把连续空白压缩为一个空格，
+ * 行与行之间用一个空格连接（开头的空行不输出），空白内容原样返回
+ *
+ * @date 2026/3/6 14:10
+ */
+public final class CodeCompressor {
+
+    private CodeCompressor() {
+    }
+
+    /**
+     * 压缩代码
+     *
+     * @param code 原始代码
+     * @return 压缩后的代码 为null或空白时原样返回
+     */
+    public static String compress(String code) {
+        if (code == null || isBlank(code)) {
+            return code;
+        }
+        StringBuilder out = new StringBuilder(code.length());
+        scan(code, out);
+        return out.toString();
+    }
+
+    /**
+     * 压缩后的长度 等同于 compress(code).length() 但不构建字符串
+     */
+    public static int compressedLength(String code) {
+        if (isBlank(code)) {
+            return code.length();
+        }
+        return scan(code, null);
+    }
+
+    /**
+     * 扫描并压缩
+     *
+     * @param out 为null时只计算长度
+     * @return 压缩后的长度
+     */
+    private static int scan(String code, StringBuilder out) {
+        // 末尾的换行对应split丢弃的空行
+        int end = code.length();
+        while (end > 0 && code.charAt(end - 1) == '\n') {
+            end--;
+        }
+
+        int length = 0;
+        int lineStart = 0;
+        while (lineStart <= end) {
+            int lineEnd = code.indexOf('\n', lineStart);
+            if (lineEnd < 0 || lineEnd > end) {
+                lineEnd = end;
+            }
+
+            // 已有输出时 行之间用空格连接（空行也会连接）
+            if (length > 0) {
+                length++;
+                if (out != null) {
+                    out.append(' ');
+                }
+            }
+
+            // 去除行首行尾空白（与String.trim相同 <= ' ' 的字符）
+            int from = lineStart;
+            int to = lineEnd;
+            while (from < to && code.charAt(from) <= ' ') {
+                from++;
+            }
+            while (to > from && code.charAt(to - 1) <= ' ') {
+                to--;
+            }
+
+            // 连续空白压缩为一个空格（与正则\s相同的字符）
+            boolean inSpace = false;
+            for (int i = from; i < to; i++) {
+                char c = code.charAt(i);
+                if (isWhitespace(c)) {
+                    if (!inSpace) {
+                        length++;
+                        if (out != null) {
+                            out.append(' ');
+                        }
+                        inSpace = true;
+                    }
+                } else {
+                    length++;
+                    if (out != null) {
+                        out.append(c);
+                    }
+                    inSpace = false;
+                }
+            }
+
+            lineStart = lineEnd + 1;
+        }
+        return length;
+    }
+
+    /**
+     * 一行（不含\n）去掉首尾空白并压缩连续空白后的长度
+     */
+    private static int lineLength(String text, int from, int to) {
+        while (from < to && text.charAt(from) <= ' ') {
+            from++;
+        }
+        while (to > from && text.charAt(to - 1) <= ' ') {
+            to--;
+        }
+        int length = 0;
+        boolean inSpace = false;
+        for (int i = from; i < to; i++) {
+            if (isWhitespace(text.charAt(i))) {
+                if (!inSpace) {
+                    length++;
+                    inSpace = true;
+                }
+            } else {
+                length++;
+                inSpace = false;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isBlank(String code) {
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 压缩长度计数器
+     *
+     * 分块时需要反复判断 compressedLength(当前内容 + part + "\n") 是否超过上限
+     * 计数器记录当前内容压缩后的状态，每次判断只需要扫描新加入的part，不再重新压缩整个当前内容
+     * lengthWith(part) 与 compressedLength(当前内容 + part + "\n") 结果完全一致
+     */
+    public static final class LengthCounter {
+
+        // 当前内容的原始长度和是否全为空白 全为空白时compress原样返回
+        private int rawLength;
+        private boolean blank = true;
+
+        // 已确定的压缩长度
+        private int length;
+
+        // 是否已有输出 之后的每一行都要加一个连接空格
+        private boolean started;
+
+        // 末尾尚未确定的空行数 后面再有非空行时才计入 否则会被丢弃
+        private int pendingEmptyLines;
+
+        /**
+         * 计算加入一行（part + "\n"）后的压缩长度 不修改计数器
+         */
+        public int lengthWith(String part) {
+            LengthCounter copy = new LengthCounter();
+            copy.rawLength = rawLength;
+            copy.blank = blank;
+            copy.length = length;
+            copy.started = started;
+            copy.pendingEmptyLines = pendingEmptyLines;
+            copy.append(part);
+            return copy.length();
+        }
+
+        /**
+         * 加入一行 相当于当前内容追加 part + "\n"
+         */
+        public void append(String part) {
+            rawLength += part.length() + 1;
+            blank &= isBlank(part);
+
+            int lineStart = 0;
+            while (lineStart <= part.length()) {
+                int lineEnd = part.indexOf('\n', lineStart);
+                if (lineEnd < 0) {
+                    lineEnd = part.length();
+                }
+                if (lineEnd == lineStart) {
+                    pendingEmptyLines++;
+                } else {
+                    if (started) {
+                        length += pendingEmptyLines + 1;
+                    }
+                    pendingEmptyLines = 0;
+                    int lineLength = lineLength(part, lineStart, lineEnd);
+                    length += lineLength;
+                    started |= lineLength > 0;
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        /**
+         * 当前内容的压缩长度
+         */
+        public int length() {
+            return blank ? rawLength : length;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.yokior.utils;
+
+import com.yokior.config.IngestConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author Yokior
+ * @description 扫描项目中的Java源文件
+ *
+ * 边遍历边回调，找到第一个文件就可以开始处理，不需要先收集完整的文件列表
+ * 跳过配置中忽略的目录（target、build、.git、生成的源码等）和超过大小上限的文件
+ * 忽略规则只在源码目录（src/xxx/java）之外生效，源码目录里名为build、out的包照常扫描
+ *
+ * @date 2026/3/6 9:30
+ */
+@Component
+@Slf4j
+public class JavaFileScanner {
+
+    private final Set<String> ignoreDirs;
+
+    private final long maxFileBytes;
+
+    public JavaFileScanner(IngestConfig ingestConfig) {
+        this.ignoreDirs = new HashSet<>(ingestConfig.getIgnoreDirs());
+        this.maxFileBytes = ingestConfig.getMaxFileBytes() == null ? Long.MAX_VALUE : ingestConfig.getMaxFileBytes();
+    }
+
+    /**
+     * 文件回调
+     */
+    @FunctionalInterface
+    public interface Handler {
+
+        /**
+         * @param file 找到的Java文件
+         * @param attrs 文件属性 遍历时已经读取 不需要再查询大小和修改时间
+         * @return 返回false时停止扫描
+         */
+        boolean handle(Path file, BasicFileAttributes attrs) throws Exception;
+    }
+
+    /**
+     * 扫描目录 每找到一个Java文件回调一次
+     *
+     * @param root 项目根目录
+     * @param handler 文件回调
+     * @return 回调的文件数
+     */
+    public long scan(Path root, Handler handler) throws Exception {
+        ScanVisitor visitor = new ScanVisitor(root, handler);
+        try {
+            Files.walkFileTree(root, visitor);
+        } catch (HandlerException e) {
+            throw e.cause;
+        }
+        if (visitor.skipped > 0) {
+            log.debug("扫描 {} 跳过 {} 个超过 {} 字节的文件", root, visitor.skipped, maxFileBytes);
+        }
+        return visitor.accepted;
+    }
+
+    private class ScanVisitor extends SimpleFileVisitor<Path> {
+
+        private final Path root;
+
+        private final Handler handler;
+
+        private long accepted;
+
+        private long skipped;
+
+        /**
+         * 当前所在的源码目录 不在源码目录中时为null
+         */
+        private Path sourceRoot;
+
+        private ScanVisitor(Path root, Handler handler) {
+            this.root = root;
+            this.handler = handler;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (sourceRoot != null || dir.equals(root) || dir.getFileName() == null) {
+                return FileVisitResult.CONTINUE;
+            }
+            if (ignoreDirs.contains(dir.getFileName().toString())) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            if (isSourceRoot(dir)) {
+                sourceRoot = dir;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+            if (dir.equals(sourceRoot)) {
+                sourceRoot = null;
+            }
+            return super.postVisitDirectory(dir, e);
+        }
+
+        /**
+         * Maven/Gradle的源码目录 src/main/java、src/test/java等
+         */
+        private boolean isSourceRoot(Path dir) {
+            Path parent = dir.getParent();
+            Path src = parent == null ? null : parent.getParent();
+            return "java".equals(dir.getFileName().toString())
+                    && src != null && src.getFileName() != null
+                    && "src".equals(src.getFileName().toString());
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            if (!attrs.isRegularFile() || !file.toString().endsWith(".java")) {
+                return FileVisitResult.CONTINUE;
+            }
+            if (attrs.size() > maxFileBytes) {
+                skipped++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            accepted++;
+            try {
+                return handler.handle(file, attrs) ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new HandlerException(e);
+            }
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // 没有权限等情况 跳过该文件继续扫描
+            log.warn("无法访问 {}: {}", file, e.getMessage());
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    /**
+     * 用于把回调中的受检异常带出walkFileTree
+     */
+    private static class HandlerException extends RuntimeException {
+
+        private final Exception cause;
+
+        private HandlerException(Exception cause) {
+            super(cause);
+            this.cause = cause;
+        }
+    }
+}
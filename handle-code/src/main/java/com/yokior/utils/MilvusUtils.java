@@ -1,7 +1,9 @@
 package com.yokior.utils;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.yokior.common.SplitChunk;
+import com.yokior.config.MilvusIndexConfig;
 import io.milvus.v2.client.MilvusClientV2;
 import io.milvus.v2.common.DataType;
 import io.milvus.v2.common.IndexParam;
@@ -11,6 +13,7 @@ import io.milvus.v2.service.collection.request.DropCollectionReq;
 import io.milvus.v2.service.collection.request.HasCollectionReq;
 import io.milvus.v2.service.collection.request.LoadCollectionReq;
 import io.milvus.v2.service.collection.request.ReleaseCollectionReq;
+import io.milvus.v2.service.index.request.CreateIndexReq;
 import io.milvus.v2.service.vector.request.DeleteReq;
 import io.milvus.v2.service.vector.request.InsertReq;
 import io.milvus.v2.service.vector.request.QueryReq;
@@ -22,6 +25,7 @@ import io.milvus.v2.service.vector.response.QueryResp;
 import io.milvus.v2.service.vector.response.SearchResp;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -36,21 +40,54 @@ import java.util.*;
 public class MilvusUtils {
 
     private final MilvusClientV2 milvusClient;
-    private final Gson gson = new Gson();
 
-    public MilvusUtils(@Qualifier("myMilvusClient") MilvusClientV2 myMilvusClient) {
+    // 单次插入请求的估算字节上限
+    private final long insertMaxBytes;
+
+    // 按项目名分区的分区数
+    private final int partitionNum;
+
+    private final MilvusIndexConfig indexConfig;
+
+    // 默认返回的字段
+    private static final List<String> SEARCH_OUTPUT_FIELDS = List.of("content", "class_name", "method_name", "type", "site", "project_name");
+
+    public MilvusUtils(@Qualifier("myMilvusClient") MilvusClientV2 myMilvusClient,
+                       @Value("${milvus.insert-max-bytes:16777216}") long insertMaxBytes,
+                       @Value("${milvus.partition-num:64}") int partitionNum,
+                       MilvusIndexConfig indexConfig) {
         this.milvusClient = myMilvusClient;
+        this.insertMaxBytes = Math.max(1, insertMaxBytes);
+        this.partitionNum = Math.max(1, partitionNum);
+        this.indexConfig = indexConfig;
     }
 
     /**
      * 创建集合
+     * project_name作为分区键 同一项目的数据写入同一分区
+     * 搜索和删除的表达式中带有 project_name == "xxx" 时只访问该项目所在的分区
      *
      * @param collectionName 集合名称
      * @param dimension 向量维度
      * @return 是否创建成功
      */
     public boolean createCollection(String collectionName, int dimension) {
+        return createCollection(collectionName, dimension, indexConfig.getProfile());
+    }
+
+    /**
+     * 创建集合 使用指定的索引方案
+     * 同时为过滤常用的标量字段建立倒排索引
+     *
+     * @param collectionName 集合名称
+     * @param dimension 向量维度
+     * @param profileName 索引方案名 见MilvusIndexConfig
+     * @return 是否创建成功
+     */
+    public boolean createCollection(String collectionName, int dimension, String profileName) {
         try {
+            MilvusIndexConfig.IndexProfile profile = indexConfig.getProfile(profileName);
+
             CreateCollectionReq.CollectionSchema schema = CreateCollectionReq.CollectionSchema.builder()
                     .enableDynamicField(false)
                     .build();
@@ -90,6 +127,7 @@ public class MilvusUtils {
                     .fieldName("project_name")
                     .dataType(DataType.VarChar)
                     .maxLength(200)
+                    .isPartitionKey(true)
                     .build());
 
             schema.addField(AddFieldReq.builder()
@@ -107,14 +145,17 @@ public class MilvusUtils {
             List<IndexParam> indexes = new ArrayList<>();
             indexes.add(IndexParam.builder()
                     .fieldName("vector")
-                    .indexType(IndexParam.IndexType.HNSW)
-                    .metricType(IndexParam.MetricType.COSINE)
+                    .indexType(profile.getIndexType())
+                    .metricType(profile.getMetricType())
+                    .extraParams(profile.getBuildParams())
                     .build());
+            indexes.addAll(scalarIndexes());
 
             CreateCollectionReq requestCreate = CreateCollectionReq.builder()
                     .collectionName(collectionName)
                     .collectionSchema(schema)
                     .indexParams(indexes)
+                    .numPartitions(partitionNum)
                     .build();
 
             milvusClient.createCollection(requestCreate);
@@ -125,6 +166,37 @@ public class MilvusUtils {
         }
     }
 
+    /**
+     * 为已有集合补建标量字段的倒排索引
+     *
+     * @param collectionName 集合名称
+     * @return 是否创建成功
+     */
+    public boolean createScalarIndexes(String collectionName) {
+        try {
+            milvusClient.createIndex(CreateIndexReq.builder()
+                    .collectionName(collectionName)
+                    .indexParams(scalarIndexes())
+                    .build());
+            return true;
+        } catch (Exception e) {
+            log.error("创建标量索引失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private List<IndexParam> scalarIndexes() {
+        List<IndexParam> indexes = new ArrayList<>();
+        for (String field : indexConfig.getScalarIndexFields()) {
+            indexes.add(IndexParam.builder()
+                    .fieldName(field)
+                    .indexName(field + "_idx")
+                    .indexType(IndexParam.IndexType.INVERTED)
+                    .build());
+        }
+        return indexes;
+    }
+
     /**
      * 删除集合
      *
@@ -220,38 +292,141 @@ public class MilvusUtils {
     public boolean insert(String collectionName, List<List<Float>> vectors, List<String> contents,
                          List<String> types, List<String> sites, String project_name,
                          List<String> classNames, List<String> methodNames) {
+        List<SplitChunk> chunks = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            chunks.add(SplitChunk.builder()
+                    .vector(toFloatArray(vectors.get(i)))
+                    .content(contents.get(i))
+                    .type(types.get(i))
+                    .site(sites.get(i))
+                    .projectName(project_name)
+                    .className(classNames.get(i))
+                    .methodName(methodNames.get(i))
+                    .build());
+        }
+        return insertChunks(collectionName, chunks);
+    }
+
+    /**
+     * 插入分片
+     * 按估算的请求字节数拆分成多批插入 避免单个请求超过gRPC消息大小限制
+     *
+     * @param collectionName 集合名称
+     * @param chunks 分片列表 向量为float[]
+     * @return 是否插入成功
+     */
+    public boolean insertChunks(String collectionName, List<SplitChunk> chunks) {
         try {
-            List<JsonObject> data = new ArrayList<>();
-
-            for (int i = 0; i < vectors.size(); i++) {
-                Map<String, Object> rowData = new HashMap<>();
-                rowData.put("vector", vectors.get(i));
-                rowData.put("content", contents.get(i));
-                rowData.put("type", types.get(i));
-                rowData.put("site", sites.get(i));
-                rowData.put("project_name", project_name);
-                rowData.put("class_name", classNames.get(i));
-                rowData.put("method_name", methodNames.get(i));
-
-                // 将Map转换为Gson的JsonObject
-                String jsonStr = gson.toJson(rowData);
-                JsonObject jsonObject = gson.fromJson(jsonStr, JsonObject.class);
-                data.add(jsonObject);
+            boolean success = true;
+            int from = 0;
+            long batchBytes = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                long rowBytes = estimateRowBytes(chunks.get(i));
+                if (i > from && batchBytes + rowBytes > insertMaxBytes) {
+                    success &= doInsert(collectionName, chunks.subList(from, i), batchBytes);
+                    from = i;
+                    batchBytes = 0;
+                }
+                batchBytes += rowBytes;
             }
-
-            InsertReq insertReq = InsertReq.builder()
-                    .collectionName(collectionName)
-                    .data(data)
-                    .build();
-
-            InsertResp response = milvusClient.insert(insertReq);
-            return response.getInsertCnt() > 0;
+            if (from < chunks.size()) {
+                success &= doInsert(collectionName, chunks.subList(from, chunks.size()), batchBytes);
+            }
+            return success;
         } catch (Exception e) {
             log.error("插入数据失败: {}", e.getMessage());
             return false;
         }
     }
 
+    private boolean doInsert(String collectionName, List<SplitChunk> chunks, long batchBytes) {
+        InsertReq insertReq = InsertReq.builder()
+                .collectionName(collectionName)
+                .data(toRows(chunks))
+                .build();
+
+        InsertResp response = milvusClient.insert(insertReq);
+        log.debug("插入 {} 条数据, 估算 {} KB", chunks.size(), batchBytes / 1024);
+        return response.getInsertCnt() > 0;
+    }
+
+    /**
+     * 将分片直接转换为Milvus行数据
+     * 为空的字段不写入 与之前经过JSON序列化时的行为一致
+     */
+    public static List<JsonObject> toRows(List<SplitChunk> chunks) {
+        List<JsonObject> data = new ArrayList<>(chunks.size());
+
+        for (SplitChunk chunk : chunks) {
+            JsonObject row = new JsonObject();
+
+            float[] vector = chunk.getVector();
+            if (vector != null) {
+                JsonArray vectorArray = new JsonArray(vector.length);
+                for (float value : vector) {
+                    vectorArray.add(value);
+                }
+                row.add("vector", vectorArray);
+            }
+            addIfNotNull(row, "content", chunk.getContent());
+            addIfNotNull(row, "type", chunk.getType());
+            addIfNotNull(row, "site", chunk.getSite());
+            addIfNotNull(row, "project_name", chunk.getProjectName());
+            addIfNotNull(row, "class_name", chunk.getClassName());
+            addIfNotNull(row, "method_name", chunk.getMethodName());
+
+            data.add(row);
+        }
+
+        return data;
+    }
+
+    private static void addIfNotNull(JsonObject row, String field, String value) {
+        if (value != null) {
+            row.addProperty(field, value);
+        }
+    }
+
+    /**
+     * 估算一行数据在请求中占用的字节数
+     * 向量按4字节一个维度 字符串按UTF-8编码长度 另加字段的固定开销
+     */
+    static long estimateRowBytes(SplitChunk chunk) {
+        long bytes = 64;
+        if (chunk.getVector() != null) {
+            bytes += (long) chunk.getVector().length * Float.BYTES;
+        }
+        bytes += utf8Length(chunk.getContent());
+        bytes += utf8Length(chunk.getType());
+        bytes += utf8Length(chunk.getSite());
+        bytes += utf8Length(chunk.getProjectName());
+        bytes += utf8Length(chunk.getClassName());
+        bytes += utf8Length(chunk.getMethodName());
+        return bytes;
+    }
+
+    private static int utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // 代理对共4字节
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
     /**
      * 删除数据
      *
@@ -329,36 +504,51 @@ public class MilvusUtils {
      * @param vectors 搜索向量
      * @param topK 返回结果数量
      * @param metricType 度量类型
-     * @param expr 表达式
-     * @param params 参数
+     * @param expr 表达式 可为空
+     * @param params 参数 可为空
      * @return 搜索结果
      */
-    public SearchResp search(String collectionName, List<List<Float>> vectors, int topK,
-                           IndexParam.MetricType metricType, String expr, Map<String, Object> params) {
+    public SearchResp searchVectors(String collectionName, List<float[]> vectors, int topK,
+                                    IndexParam.MetricType metricType, String expr, Map<String, Object> params) {
+        return searchVectors(collectionName, vectors, topK, metricType, expr, params, SEARCH_OUTPUT_FIELDS);
+    }
+
+    /**
+     * 向量搜索 指定返回的字段
+     *
+     * @param collectionName 集合名称
+     * @param vectors 搜索向量
+     * @param topK 返回结果数量
+     * @param metricType 度量类型
+     * @param expr 表达式 可为空
+     * @param params 参数 可为空
+     * @param outputFields 返回的字段 id和分数总会返回
+     * @return 搜索结果
+     */
+    public SearchResp searchVectors(String collectionName, List<float[]> vectors, int topK,
+                                    IndexParam.MetricType metricType, String expr, Map<String, Object> params,
+                                    List<String> outputFields) {
         try {
-            // 将List<List<Float>>转换为List<BaseVector>
-            List<BaseVector> baseVectors = new ArrayList<>();
-            for (List<Float> vector : vectors) {
-                // 转换Float为float数组
-                float[] floatArray = new float[vector.size()];
-                for (int i = 0; i < vector.size(); i++) {
-                    floatArray[i] = vector.get(i);
-                }
-                baseVectors.add(new FloatVec(floatArray));
+            List<BaseVector> baseVectors = new ArrayList<>(vectors.size());
+            for (float[] vector : vectors) {
+                baseVectors.add(new FloatVec(vector));
             }
 
-            SearchReq searchReq = SearchReq.builder()
+            SearchReq.SearchReqBuilder<?, ?> builder = SearchReq.builder()
                     .collectionName(collectionName)
                     .data(baseVectors)
                     .annsField("vector")
                     .topK(topK)
-                    .outputFields(List.of("content", "class_name", "method_name", "type", "site", "project_name"))
-                    .metricType(metricType)
-                    .filter(expr)
-                    .searchParams(params)
-                    .build();
+                    .outputFields(outputFields)
+                    .metricType(metricType);
+            if (expr != null) {
+                builder.filter(expr);
+            }
+            if (params != null) {
+                builder.searchParams(params);
+            }
 
-            return milvusClient.search(searchReq);
+            return milvusClient.search(builder.build());
         } catch (Exception e) {
             log.error("向量搜索失败: {}", e.getMessage());
             return null;
@@ -373,37 +563,27 @@ public class MilvusUtils {
      * @param topK 返回结果数量
      * @param metricType 度量类型
      * @param expr 表达式
+     * @param params 参数
      * @return 搜索结果
      */
     public SearchResp search(String collectionName, List<List<Float>> vectors, int topK,
-                             IndexParam.MetricType metricType, String expr) {
-        try {
-            // 将List<List<Float>>转换为List<BaseVector>
-            List<BaseVector> baseVectors = new ArrayList<>();
-            for (List<Float> vector : vectors) {
-                // 转换Float为float数组
-                float[] floatArray = new float[vector.size()];
-                for (int i = 0; i < vector.size(); i++) {
-                    floatArray[i] = vector.get(i);
-                }
-                baseVectors.add(new FloatVec(floatArray));
-            }
-
-            SearchReq searchReq = SearchReq.builder()
-                    .collectionName(collectionName)
-                    .data(baseVectors)
-                    .annsField("vector")
-                    .topK(topK)
-                    .outputFields(List.of("content", "class_name", "method_name", "type", "site", "project_name"))
-                    .metricType(metricType)
-                    .filter(expr)
-                    .build();
+                           IndexParam.MetricType metricType, String expr, Map<String, Object> params) {
+        return searchVectors(collectionName, toFloatArrays(vectors), topK, metricType, expr, params);
+    }
 
-            return milvusClient.search(searchReq);
-        } catch (Exception e) {
-            log.error("向量搜索失败: {}", e.getMessage());
-            return null;
-        }
+    /**
+     * 向量搜索
+     *
+     * @param collectionName 集合名称
+     * @param vectors 搜索向量
+     * @param topK 返回结果数量
+     * @param metricType 度量类型
+     * @param expr 表达式
+     * @return 搜索结果
+     */
+    public SearchResp search(String collectionName, List<List<Float>> vectors, int topK,
+                             IndexParam.MetricType metricType, String expr) {
+        return searchVectors(collectionName, toFloatArrays(vectors), topK, metricType, expr, null);
     }
 
     /**
@@ -417,32 +597,23 @@ public class MilvusUtils {
      */
     public SearchResp search(String collectionName, List<List<Float>> vectors, int topK,
                            IndexParam.MetricType metricType) {
-        try {
-            // 将List<List<Float>>转换为List<BaseVector>
-            List<BaseVector> baseVectors = new ArrayList<>();
-            for (List<Float> vector : vectors) {
-                // 转换Float为float数组
-                float[] floatArray = new float[vector.size()];
-                for (int i = 0; i < vector.size(); i++) {
-                    floatArray[i] = vector.get(i);
-                }
-                baseVectors.add(new FloatVec(floatArray));
-            }
+        return searchVectors(collectionName, toFloatArrays(vectors), topK, metricType, null, null);
+    }
 
-            SearchReq searchReq = SearchReq.builder()
-                    .collectionName(collectionName)
-                    .data(baseVectors)
-                    .annsField("vector")
-                    .metricType(metricType)
-                    .topK(topK)
-                    .outputFields(List.of("content", "class_name", "method_name", "type", "site", "project_name"))
-                    .build();
+    private static List<float[]> toFloatArrays(List<List<Float>> vectors) {
+        List<float[]> floatArrays = new ArrayList<>(vectors.size());
+        for (List<Float> vector : vectors) {
+            floatArrays.add(toFloatArray(vector));
+        }
+        return floatArrays;
+    }
 
-            return milvusClient.search(searchReq);
-        } catch (Exception e) {
-            log.error("向量搜索失败: {}", e.getMessage());
-            return null;
+    private static float[] toFloatArray(List<Float> vector) {
+        float[] floatArray = new float[vector.size()];
+        for (int i = 0; i < vector.size(); i++) {
+            floatArray[i] = vector.get(i);
         }
+        return floatArray;
     }
 
     /**
@@ -0,0 +1,153 @@
+package com.yokior.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * @author Yokior
+ * @description 源码加载 按字节读取后显式解码，不依赖平台默认编码
+ *
+ * 整个文件读入堆内数组后直接包装为ByteBuffer解码，不使用内存映射
+ * （源码文件都不大，解码本身就要复制一次，映射省不下拷贝，映射区域在GC前不会释放，Windows下还会锁住文件）
+ * 有BOM时按BOM的编码解码；否则先按UTF-8严格解码，失败再按GBK解码（与解压时的编码顺序一致）
+ * 解码结果是CharBuffer，通过reader()直接交给解析器，不再转成String
+ *
+ * @date 2026/3/7 10:20
+ */
+@Slf4j
+public final class SourceLoader {
+
+    private static final Charset GBK = Charset.forName("GBK");
+
+    private SourceLoader() {
+    }
+
+    /**
+     * 加载源码
+     *
+     * @param path 文件路径
+     * @return 解码后的源码
+     */
+    public static Source load(Path path) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        int size = bytes.remaining();
+        Charset bomCharset = skipBom(bytes);
+        if (bomCharset != null) {
+            return new Source(decode(bytes, bomCharset, CodingErrorAction.REPLACE), bomCharset, size);
+        }
+
+        try {
+            return new Source(decode(bytes, StandardCharsets.UTF_8, CodingErrorAction.REPORT), StandardCharsets.UTF_8, size);
+        } catch (CharacterCodingException e) {
+            log.debug("{} 不是UTF-8编码，按GBK读取", path.getFileName());
+            bytes.rewind();
+            return new Source(decode(bytes, GBK, CodingErrorAction.REPLACE), GBK, size);
+        }
+    }
+
+    /**
+     * 识别并跳过BOM
+     *
+     * @return BOM对应的编码 没有BOM时返回null
+     */
+    private static Charset skipBom(ByteBuffer bytes) {
+        int b0 = bytes.remaining() > 0 ? bytes.get(0) & 0xFF : -1;
+        int b1 = bytes.remaining() > 1 ? bytes.get(1) & 0xFF : -1;
+        int b2 = bytes.remaining() > 2 ? bytes.get(2) & 0xFF : -1;
+
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            bytes.position(3);
+            return StandardCharsets.UTF_8;
+        }
+        if (b0 == 0xFE && b1 == 0xFF) {
+            bytes.position(2);
+            return StandardCharsets.UTF_16BE;
+        }
+        if (b0 == 0xFF && b1 == 0xFE) {
+            bytes.position(2);
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    private static CharBuffer decode(ByteBuffer bytes, Charset charset, CodingErrorAction action) throws CharacterCodingException {
+        return charset.newDecoder()
+                .onMalformedInput(action)
+                .onUnmappableCharacter(action)
+                .decode(bytes);
+    }
+
+    /**
+     * 计算文件相对项目根目录的位置 统一用/分隔并以/开头，例如 /src/main/java/com/demo/User.java
+     */
+    public static String relativeSite(Path projectRoot, Path file) {
+        Path relative = projectRoot.toAbsolutePath().normalize().relativize(file.toAbsolutePath().normalize());
+        StringBuilder site = new StringBuilder();
+        for (Path name : relative) {
+            site.append('/').append(name);
+        }
+        return site.toString();
+    }
+
+    /**
+     * 没有给出项目根目录时 按项目名推断
+     * 优先使用临时目录下的同名目录（解压的项目都在这里），否则取离文件最近的同名上级目录，都没有时取文件所在目录
+     */
+    public static Path guessProjectRoot(Path file, String projectName) {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path tempRoot = Paths.get(System.getProperty("java.io.tmpdir"), projectName).toAbsolutePath().normalize();
+        if (absolute.startsWith(tempRoot)) {
+            return tempRoot;
+        }
+        for (Path parent = absolute.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent.getFileName() != null && parent.getFileName().toString().equals(projectName)) {
+                return parent;
+            }
+        }
+        return absolute.getParent();
+    }
+
+    /**
+     * 解码后的源码
+     *
+     * @param content 源码内容 不含BOM
+     * @param charset 实际使用的编码
+     * @param bytes 文件字节数
+     */
+    public record Source(CharBuffer content, Charset charset, int bytes) {
+
+        /**
+         * 按需读取content的Reader 不复制整个内容
+         */
+        public Reader reader() {
+            CharBuffer buffer = content.duplicate();
+            return new Reader() {
+                @Override
+                public int read(char[] cbuf, int off, int len) {
+                    if (!buffer.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, buffer.remaining());
+                    buffer.get(cbuf, off, n);
+                    return n;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.yokior.benchmark;
+
+import com.yokior.utils.CodeCompressor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * @author Yokior
+ * @description 代码压缩对比 每次调用压缩一遍src/test/resources下的所有示例类
+ *
+ * legacy          : 原先的实现 按行split + replaceAll("\\s+") + toString().endsWith
+ * compress        : CodeCompressor.compress 一次扫描
+ * compressedLength: CodeCompressor.compressedLength 只计算长度（分块时的主要用法）
+ *
+ * 需要在handle-code目录下运行
+ *
+ * @date 2026/3/6 15:00
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodeCompressorBenchmark {
+
+    private List<String> sources;
+
+    @Setup
+    public void setUp() throws Exception {
+        sources = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(Paths.get("src/test/resources"))) {
+            for (Path path : stream.filter(p -> p.toString().endsWith(".java")).sorted().toList()) {
+                sources.add(Files.readString(path));
+            }
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        for (String source : sources) {
+            blackhole.consume(legacyCompress(source).length());
+        }
+    }
+
+    @Benchmark
+    public void compress(Blackhole blackhole) {
+        for (String source : sources) {
+            blackhole.consume(CodeCompressor.compress(source));
+        }
+    }
+
+    @Benchmark
+    public void compressedLength(Blackhole blackhole) {
+        for (String source : sources) {
+            blackhole.consume(CodeCompressor.compressedLength(source));
+        }
+    }
+
+    private static String legacyCompress(String code) {
+        if (code == null || code.trim().isEmpty()) {
+            return code;
+        }
+        String[] lines = code.split("\n");
+        StringBuilder compressed = new StringBuilder();
+        for (String line : lines) {
+            String trimmedLine = line.trim();
+            if (compressed.length() > 0 && !compressed.toString().endsWith("\n")) {
+                compressed.append(" ");
+            }
+            trimmedLine = trimmedLine.replaceAll("\\s+", " ");
+            compressed.append(trimmedLine);
+        }
+        return compressed.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(CodeCompressorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
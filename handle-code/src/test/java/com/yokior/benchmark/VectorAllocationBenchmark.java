@@ -0,0 +1,126 @@
+package com.yokior.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.yokior.common.SplitChunk;
+import com.yokior.utils.MilvusUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Yokior
+ * @description 向量从embedding到Milvus行数据的内存分配对比 每次调用处理1000个分片
+ *
+ * boxed         : 原先的 float[] -> List<Float> -> HashMap -> JSON字符串 -> JsonObject
+ * primitive     : float[] 直接放入SplitChunk 再由MilvusUtils.toRows直接构建JsonObject（不经过JSON字符串）
+ * boxedVector   : 只看向量本身 float[] -> List<Float> -> float[]（原先的搜索前转换）
+ * primitiveVector : 只看向量本身 float[] 直接传递
+ *
+ * 直接运行main方法，结果中的 gc.alloc.rate.norm 即为每1000个分片的分配字节数
+ *
+ * @date 2026/3/4 15:02
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VectorAllocationBenchmark {
+
+    private static final int CHUNKS = 1000;
+
+    private static final Gson GSON = new Gson();
+
+    @Param({"1024"})
+    private int dimensions;
+
+    private List<float[]> modelOutput;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        modelOutput = new ArrayList<>(CHUNKS);
+        for (int i = 0; i < CHUNKS; i++) {
+            float[] vector = new float[dimensions];
+            for (int j = 0; j < dimensions; j++) {
+                vector[j] = random.nextFloat();
+            }
+            modelOutput.add(vector);
+        }
+    }
+
+    @Benchmark
+    public void boxed(Blackhole blackhole) {
+        List<JsonObject> rows = new ArrayList<>(CHUNKS);
+        for (int i = 0; i < CHUNKS; i++) {
+            List<Float> vector = Arrays.asList(ArrayUtils.toObject(modelOutput.get(i)));
+
+            Map<String, Object> rowData = new HashMap<>();
+            rowData.put("vector", vector);
+            rowData.put("content", "content" + i);
+            rowData.put("type", "METHOD_DETAIL");
+            rowData.put("site", "src/main/java/Demo.java");
+            rowData.put("project_name", "demo");
+            rowData.put("class_name", "Demo");
+            rowData.put("method_name", "method" + i);
+            rows.add(GSON.fromJson(GSON.toJson(rowData), JsonObject.class));
+        }
+        blackhole.consume(rows);
+    }
+
+    @Benchmark
+    public void primitive(Blackhole blackhole) {
+        List<SplitChunk> chunks = new ArrayList<>(CHUNKS);
+        for (int i = 0; i < CHUNKS; i++) {
+            chunks.add(SplitChunk.builder()
+                    .vector(modelOutput.get(i))
+                    .content("content" + i)
+                    .type("METHOD_DETAIL")
+                    .site("src/main/java/Demo.java")
+                    .projectName("demo")
+                    .className("Demo")
+                    .methodName("method" + i)
+                    .build());
+        }
+        blackhole.consume(MilvusUtils.toRows(chunks));
+    }
+
+    @Benchmark
+    public void boxedVector(Blackhole blackhole) {
+        for (int i = 0; i < CHUNKS; i++) {
+            List<Float> vector = Arrays.asList(ArrayUtils.toObject(modelOutput.get(i)));
+            float[] floatArray = new float[vector.size()];
+            for (int j = 0; j < vector.size(); j++) {
+                floatArray[j] = vector.get(j);
+            }
+            blackhole.consume(vector);
+            blackhole.consume(floatArray);
+        }
+    }
+
+    @Benchmark
+    public void primitiveVector(Blackhole blackhole) {
+        for (int i = 0; i < CHUNKS; i++) {
+            float[] vector = modelOutput.get(i);
+            blackhole.consume(vector);
+            blackhole.consume(vector);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(VectorAllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
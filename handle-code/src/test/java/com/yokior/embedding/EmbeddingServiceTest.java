@@ -1,5 +1,6 @@
 package com.yokior.embedding;
 
+import com.yokior.config.EmbedConfig;
 import com.yokior.service.embedding.IEmbeddingService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,6 +9,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import java.util.Arrays;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
 /**
  * @author Yokior
  * @description
@@ -19,10 +24,28 @@ public class EmbeddingServiceTest {
     @Autowired
     private IEmbeddingService embeddingService;
 
+    @Autowired
+    private EmbedConfig embedConfig;
 
     @Test
     void embedding() {
         List<Float> floats = embeddingService.embedding("计算用户问题与文档段落之间的BM25相似度分数");
         System.out.println(floats);
     }
+
+    @Test
+    void embedAll() {
+        // 包含重复的文本 去重后只请求一次 两处得到相同的向量
+        List<String> texts = Arrays.asList("计算用户问题与文档段落之间的BM25相似度分数", "public void save(User user)",
+                "批量向量化", "public void save(User user)");
+        List<float[]> vectors = embeddingService.embedAll(texts);
+
+        assertEquals(texts.size(), vectors.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertNotNull(vectors.get(i));
+            assertEquals(embedConfig.getDimensions(), vectors.get(i).length);
+            System.out.println(texts.get(i) + " -> " + vectors.get(i).length);
+        }
+        assertArrayEquals(vectors.get(1), vectors.get(3));
+    }
 }
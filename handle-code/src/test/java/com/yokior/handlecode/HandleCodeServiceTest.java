@@ -1,6 +1,7 @@
 package com.yokior.handlecode;
 
 import com.yokior.service.handlecode.IHandleCodeService;
+import com.yokior.service.handlecode.IngestJob;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -27,6 +28,41 @@ public class HandleCodeServiceTest {
         handleCodeService.splitAndEmbedAndSaveAsync("C:\\Users\\M1891\\AppData\\Local\\Temp\\jjj");
     }
 
+    /**
+     * 增量导入 第二次执行时未修改的文件不会重新处理
+     */
+    @Test
+    void testIncremental() throws Exception {
+        handleCodeService.reindexIncremental("C:\\Users\\M1891\\AppData\\Local\\Temp\\jjj");
+        handleCodeService.reindexIncremental("C:\\Users\\M1891\\AppData\\Local\\Temp\\jjj");
+    }
+
+    /**
+     * 同时导入两个项目 每个任务使用自己的队列和写入会话
+     */
+    @Test
+    void testConcurrentJobs() throws Exception {
+        IngestJob job1 = handleCodeService.submit("C:\\Users\\M1891\\AppData\\Local\\Temp\\jjj");
+        IngestJob job2 = handleCodeService.submit("C:\\Users\\M1891\\AppData\\Local\\Temp\\springboot-ai-qa-system");
+
+        while (!job1.isDone() || !job2.isDone()) {
+            System.out.println(job1.progress());
+            System.out.println(job2.progress());
+            Thread.sleep(1000);
+        }
+        job1.await();
+        job2.await();
+    }
+
+    /**
+     * 直接从压缩包导入 不解压到临时目录
+     */
+    @Test
+    void testSubmitZip() throws Exception {
+        IngestJob job = handleCodeService.submitZip("D:\\Java_Project\\java-ai-helper\\handle-code\\src\\test\\resources\\test_project.zip");
+        job.await();
+        System.out.println(job.progress());
+    }
 
     /**
      * 测试springboot-ai-qa-system 1768块
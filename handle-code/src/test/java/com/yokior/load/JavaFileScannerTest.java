@@ -0,0 +1,88 @@
+package com.yokior.load;
+
+import com.yokior.config.IngestConfig;
+import com.yokior.utils.JavaFileScanner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Yokior
+ * @description 测试扫描Java文件时的忽略规则和大小限制
+ * @date 2026/3/6 10:05
+ */
+public class JavaFileScannerTest {
+
+    @TempDir
+    Path projectDir;
+
+    private void write(String relativePath, String content) throws Exception {
+        Path file = projectDir.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    @Test
+    void testIgnoreRules() throws Exception {
+        write("src/main/java/com/demo/User.java", "class User {}");
+        write("src/main/java/com/demo/readme.md", "# demo");
+        write("target/generated-sources/annotations/UserMapperImpl.java", "class UserMapperImpl {}");
+        write("build/classes/Gen.java", "class Gen {}");
+        write(".git/hooks/Hook.java", "class Hook {}");
+        write("src/main/java/com/demo/Huge.java", "class Huge {" + " ".repeat(2048) + "}");
+
+        IngestConfig config = new IngestConfig();
+        config.setMaxFileBytes(1024L);
+        JavaFileScanner scanner = new JavaFileScanner(config);
+
+        List<String> found = new ArrayList<>();
+        long count = scanner.scan(projectDir, (path, attrs) -> {
+            found.add(projectDir.relativize(path).toString().replace('\\', '/'));
+            return true;
+        });
+
+        System.out.println(found);
+        assertEquals(1, count);
+        assertEquals(List.of("src/main/java/com/demo/User.java"), found);
+    }
+
+    @Test
+    void testIgnoreRulesOutsideSourceRoot() throws Exception {
+        write("src/main/java/com/demo/build/Builder.java", "class Builder {}");
+        write("src/main/java/com/demo/out/Output.java", "class Output {}");
+        write("module/build/generated/Gen.java", "class Gen {}");
+
+        JavaFileScanner scanner = new JavaFileScanner(new IngestConfig());
+        List<String> found = new ArrayList<>();
+        scanner.scan(projectDir, (path, attrs) -> {
+            found.add(projectDir.relativize(path).toString().replace('\\', '/'));
+            return true;
+        });
+
+        found.sort(null);
+        System.out.println(found);
+        assertEquals(List.of("src/main/java/com/demo/build/Builder.java", "src/main/java/com/demo/out/Output.java"), found);
+    }
+
+    @Test
+    void testStop() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            write("src/A" + i + ".java", "class A" + i + " {}");
+        }
+
+        JavaFileScanner scanner = new JavaFileScanner(new IngestConfig());
+        List<Path> found = new ArrayList<>();
+        scanner.scan(projectDir, (path, attrs) -> {
+            found.add(path);
+            return found.size() < 3;
+        });
+
+        assertEquals(3, found.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.yokior.load;
+
+import com.yokior.utils.SourceLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Yokior
+ * @description 测试源码加载的编码识别、BOM处理和site计算
+ * @date 2026/3/7 11:00
+ */
+public class SourceLoaderTest {
+
+    private static final String CODE = "/** 用户服务 */\nclass UserService {}\n";
+
+    @TempDir
+    Path projectDir;
+
+    private SourceLoader.Source load(String name, byte[] bytes) throws Exception {
+        Path file = projectDir.resolve(name);
+        Files.write(file, bytes);
+        return SourceLoader.load(file);
+    }
+
+    private static byte[] concat(byte[] prefix, byte[] bytes) {
+        byte[] result = new byte[prefix.length + bytes.length];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        System.arraycopy(bytes, 0, result, prefix.length, bytes.length);
+        return result;
+    }
+
+    @Test
+    void testCharsets() throws Exception {
+        SourceLoader.Source utf8 = load("Utf8.java", CODE.getBytes(StandardCharsets.UTF_8));
+        assertEquals(CODE, utf8.content().toString());
+        assertEquals(StandardCharsets.UTF_8, utf8.charset());
+
+        SourceLoader.Source gbk = load("Gbk.java", CODE.getBytes(Charset.forName("GBK")));
+        assertEquals(CODE, gbk.content().toString());
+        assertEquals(Charset.forName("GBK"), gbk.charset());
+
+        byte[] utf8Bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+        SourceLoader.Source bom = load("Bom.java", concat(utf8Bom, CODE.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(CODE, bom.content().toString());
+
+        byte[] utf16Bom = {(byte) 0xFF, (byte) 0xFE};
+        SourceLoader.Source utf16 = load("Utf16.java", concat(utf16Bom, CODE.getBytes(StandardCharsets.UTF_16LE)));
+        assertEquals(CODE, utf16.content().toString());
+        assertEquals(StandardCharsets.UTF_16LE, utf16.charset());
+
+        assertEquals("", load("Empty.java", new byte[0]).content().toString());
+    }
+
+    @Test
+    void testLargeFile() throws Exception {
+        // 较大的文件 分多次通过reader读取
+        String code = CODE.repeat(2000);
+        SourceLoader.Source source = load("Large.java", code.getBytes(StandardCharsets.UTF_8));
+        assertEquals(code, source.content().toString());
+
+        StringBuilder read = new StringBuilder();
+        char[] buffer = new char[1000];
+        try (var reader = source.reader()) {
+            int n;
+            while ((n = reader.read(buffer, 0, buffer.length)) > 0) {
+                read.append(buffer, 0, n);
+            }
+        }
+        assertEquals(code, read.toString());
+    }
+
+    @Test
+    void testSite() {
+        Path file = projectDir.resolve("demo/src/main/java/User.java");
+        assertEquals("/src/main/java/User.java", SourceLoader.relativeSite(projectDir.resolve("demo"), file));
+        assertEquals(projectDir.resolve("demo").toAbsolutePath(), SourceLoader.guessProjectRoot(file, "demo"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.yokior.load;
+
+import com.yokior.config.IngestConfig;
+import com.yokior.service.load.LoadFileServiceImpl;
+import com.yokior.utils.JavaFileScanner;
+import com.yokior.utils.SourceLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * @author Yokior
+ * @description 测试解压时的编码识别、并行解压、只解压Java文件和不解压直接读取
+ * @date 2026/3/7 15:30
+ */
+public class UnzipTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ExecutorService executor;
+    private LoadFileServiceImpl loadFileService;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        loadFileService = new LoadFileServiceImpl();
+        ReflectionTestUtils.setField(loadFileService, "unzipExecutor", executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Path createZip(String name, Charset charset, String dirName) throws Exception {
+        Path zip = tempDir.resolve(name + ".zip");
+        try (OutputStream out = Files.newOutputStream(zip);
+             ZipOutputStream zos = new ZipOutputStream(out, charset)) {
+            zos.putNextEntry(new ZipEntry("src/"));
+            zos.closeEntry();
+            for (int i = 0; i < 50; i++) {
+                zos.putNextEntry(new ZipEntry("src/" + dirName + "/User" + i + ".java"));
+                zos.write(("class User" + i + " {}\n").repeat(2000).getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+            zos.putNextEntry(new ZipEntry(dirName + "/readme.md"));
+            zos.write("# 说明".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+        return zip;
+    }
+
+    @Test
+    void testGbkNames() throws Exception {
+        // 文件系统编码不支持中文文件名时跳过
+        assumeTrue(Charset.forName(System.getProperty("sun.jnu.encoding")).newEncoder().canEncode("用户"));
+
+        Path zip = createZip("unzip_test_gbk", Charset.forName("GBK"), "用户");
+        Path dir = Paths.get(loadFileService.unzipAndSaveFile(zip.toString()));
+        try {
+            assertTrue(Files.exists(dir.resolve("src/用户/User0.java")));
+            assertEquals(("class User49 {}\n").repeat(2000), Files.readString(dir.resolve("src/用户/User49.java")));
+            assertTrue(Files.exists(dir.resolve("用户/readme.md")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testJavaOnly() throws Exception {
+        Path zip = createZip("unzip_test_java_only", StandardCharsets.UTF_8, "user");
+        Path dir = Paths.get(loadFileService.unzipAndSaveFile(zip.toString(), true));
+        try {
+            try (var stream = Files.walk(dir)) {
+                assertEquals(50, stream.filter(Files::isRegularFile).count());
+            }
+            assertFalse(Files.exists(dir.resolve("user/readme.md")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void testOpenZip() throws Exception {
+        Path zip = createZip("unzip_test_open", StandardCharsets.UTF_8, "user");
+        try (FileSystem zipFileSystem = loadFileService.openZip(zip.toString())) {
+            Path root = zipFileSystem.getPath("/");
+            JavaFileScanner scanner = new JavaFileScanner(new IngestConfig());
+            List<String> sites = new ArrayList<>();
+            scanner.scan(root, (path, attrs) -> {
+                sites.add(SourceLoader.relativeSite(root, path));
+                return true;
+            });
+            assertEquals(50, sites.size());
+            assertTrue(sites.contains("/src/user/User0.java"));
+
+            // 超过映射阈值的条目同样可以读取
+            SourceLoader.Source source = SourceLoader.load(zipFileSystem.getPath("/src/user/User10.java"));
+            assertEquals(("class User10 {}\n").repeat(2000), source.content().toString());
+        }
+    }
+
+    private void delete(Path dir) throws Exception {
+        try (var stream = Files.walk(dir)) {
+            stream.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+}
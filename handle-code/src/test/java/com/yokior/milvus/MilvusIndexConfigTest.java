@@ -0,0 +1,46 @@
+package com.yokior.milvus;
+
+import com.yokior.config.MilvusIndexConfig;
+import io.milvus.v2.common.IndexParam;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Yokior
+ * @description 测试索引方案的合并和搜索参数
+ * @date 2026/3/10 15:00
+ */
+public class MilvusIndexConfigTest {
+
+    @Test
+    void testSearchParams() {
+        MilvusIndexConfig.IndexProfile hnsw = new MilvusIndexConfig().getProfile("hnsw");
+
+        assertEquals(64, hnsw.mergeSearchParams(null, 10).get("ef"));
+        // topK大于默认ef时提高到topK 显式传入时不修改
+        assertEquals(100, hnsw.mergeSearchParams(null, 100).get("ef"));
+        assertEquals(32, hnsw.mergeSearchParams(Map.of("ef", 32), 100).get("ef"));
+
+        // 返回的是副本
+        hnsw.mergeSearchParams(null, 10).put("ef", 1);
+        assertEquals(64, hnsw.getSearchParams().get("ef"));
+
+        assertEquals(200, new MilvusIndexConfig().getProfile("diskann").mergeSearchParams(null, 200).get("search_list"));
+    }
+
+    @Test
+    void testMetricType() {
+        MilvusIndexConfig config = new MilvusIndexConfig();
+        MilvusIndexConfig.IndexProfile configured = new MilvusIndexConfig.IndexProfile();
+        configured.setMetricType(IndexParam.MetricType.IP);
+        config.getProfiles().put("hnsw", configured);
+        config.getProfiles().put("ivf_flat", new MilvusIndexConfig.IndexProfile());
+
+        assertEquals(IndexParam.MetricType.IP, config.getProfile("hnsw").getMetricType());
+        assertEquals(IndexParam.IndexType.HNSW, config.getProfile("hnsw").getIndexType());
+        assertEquals(IndexParam.MetricType.COSINE, config.getProfile("ivf_flat").getMetricType());
+    }
+}
@@ -5,6 +5,7 @@ import com.alibaba.fastjson2.JSONWriter;
 import com.google.protobuf.Descriptors;
 import com.yokior.common.EmbedSearchResult;
 import com.yokior.common.FilterExpression;
+import com.yokior.common.SearchProjection;
 import com.yokior.common.SplitChunk;
 import com.yokior.service.milvus.IMilvusService;
 import com.yokior.utils.MilvusUtils;
@@ -111,4 +112,72 @@ public class MilvusServiceTest {
         }
 
     }
+
+    /**
+     * 创建以project_name为分区键的测试集合
+     */
+    @Test
+    void testCreateCollection() {
+        milvusUtils.dropCollection("TestJava");
+        boolean b = milvusUtils.createCollection("TestJava", 512);
+        log.info("创建结果：{}", b);
+    }
+
+    /**
+     * 使用IVF_FLAT索引创建测试集合 并为已有集合补建标量索引
+     */
+    @Test
+    void testCreateCollectionWithProfile() {
+        milvusUtils.dropCollection("TestJava");
+        log.info("创建结果：{}", milvusUtils.createCollection("TestJava", 512, "ivf_flat"));
+        log.info("补建标量索引：{}", milvusUtils.createScalarIndexes("JavaProject"));
+    }
+
+    /**
+     * 只在指定项目的分区内搜索
+     */
+    @Test
+    void testSearchInProject() {
+        float[] vector = new float[512];
+        vector[0] = 1;
+        // 单次搜索提高ef 覆盖索引方案的默认值
+        List<EmbedSearchResult> resultList = milvusService.searchInProject("jjj", vector, 5, "type == \"method\"", Map.of("ef", 128));
+        for (EmbedSearchResult result : resultList) {
+            log.info("{} {} {}", result.getProjectName(), result.getClassName(), result.getMethodName());
+        }
+    }
+
+    /**
+     * 多个查询向量一次请求 每个查询一组结果
+     */
+    @Test
+    void testSearchBatch() {
+        float[] vector1 = new float[512];
+        vector1[0] = 1;
+        float[] vector2 = new float[512];
+        vector2[1] = 1;
+        List<List<EmbedSearchResult>> resultLists = milvusService.searchBatch(List.of(vector1, vector2), 5, null);
+        for (int i = 0; i < resultLists.size(); i++) {
+            log.info("查询 {} 共 {} 条结果", i, resultLists.get(i).size());
+            for (EmbedSearchResult result : resultLists.get(i)) {
+                log.info("{} {} {}", result.getScore(), result.getClassName(), result.getMethodName());
+            }
+        }
+    }
+
+    /**
+     * 先只取类名方法名 再为前两条结果补充代码内容
+     */
+    @Test
+    void testLeanSearchAndHydrate() {
+        float[] vector = new float[512];
+        vector[0] = 1;
+        List<EmbedSearchResult> resultList = milvusService.search(vector, 10, null, null, SearchProjection.LEAN);
+        List<EmbedSearchResult> used = resultList.subList(0, Math.min(2, resultList.size()));
+        milvusService.hydrate(used);
+        for (EmbedSearchResult result : resultList) {
+            log.info("{} {} {} 内容长度 {}", result.getId(), result.getClassName(), result.getMethodName(),
+                    result.getContent() == null ? null : result.getContent().length());
+        }
+    }
 }
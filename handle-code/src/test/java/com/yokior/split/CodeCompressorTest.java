@@ -0,0 +1,121 @@
+package com.yokior.split;
+
+import com.yokior.utils.CodeCompressor;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Yokior
+ * @description 测试CodeCompressor与原先按行正则压缩的实现结果一致
+ * @date 2026/3/6 14:40
+ */
+public class CodeCompressorTest {
+
+    /**
+     * 原先CodeSplitter中的实现
+     */
+    static String legacyCompress(String code) {
+        if (code == null || code.trim().isEmpty()) {
+            return code;
+        }
+
+        String[] lines = code.split("\n");
+        StringBuilder compressed = new StringBuilder();
+
+        for (String line : lines) {
+            String trimmedLine = line.trim();
+
+            if (compressed.length() > 0 && !compressed.toString().endsWith("\n")) {
+                compressed.append(" ");
+            }
+
+            trimmedLine = trimmedLine.replaceAll("\\s+", " ");
+            compressed.append(trimmedLine);
+        }
+
+        return compressed.toString();
+    }
+
+    private void assertSame(String code) {
+        String expected = legacyCompress(code);
+        assertEquals(expected, CodeCompressor.compress(code), () -> "输入: [" + code + "]");
+        if (code != null) {
+            assertEquals(expected.length(), CodeCompressor.compressedLength(code), () -> "输入: [" + code + "]");
+        }
+    }
+
+    @Test
+    void testEdgeCases() {
+        List<String> cases = List.of(
+                "", " ", "\n", "\n\n", " \t\r\n ",
+                "a", " a ", "a\nb", "a\n\nb", "\n\na", "a\n\n", "a\n \n", "a\n\t\n",
+                "a  \t b", "a\r\nb\r\n", "  public  void   f() {\n\n    return;\n  }\n",
+                "a\u000Bb\fc", "a\u0001b", "\u0001a\u0001", "a \u0001 b", "中文  注释\n\n代码"
+        );
+        assertSame(null);
+        for (String code : cases) {
+            assertSame(code);
+        }
+    }
+
+    @Test
+    void testRandom() {
+        char[] alphabet = {'a', 'b', ' ', ' ', '\t', '\n', '\n', '\r', '\f', '\u000B', '\u0001', '{', '中'};
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int length = random.nextInt(40);
+            StringBuilder code = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                code.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            assertSame(code.toString());
+        }
+    }
+
+    /**
+     * 计数器的 lengthWith(part) 与 compressedLength(当前内容 + part + "\n") 一致
+     */
+    @Test
+    void testLengthCounter() {
+        char[] alphabet = {'a', ' ', '\t', '\n', '\n', '\r', '\u0001', '中'};
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            CodeCompressor.LengthCounter counter = new CodeCompressor.LengthCounter();
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < 10; j++) {
+                int length = random.nextInt(8);
+                StringBuilder part = new StringBuilder(length);
+                for (int k = 0; k < length; k++) {
+                    part.append(alphabet[random.nextInt(alphabet.length)]);
+                }
+                String expectedContent = content + part.toString() + "\n";
+                assertEquals(legacyCompress(expectedContent).length(), counter.lengthWith(part.toString()),
+                        () -> "内容: [" + expectedContent + "]");
+
+                content.append(part).append("\n");
+                counter.append(part.toString());
+                assertEquals(legacyCompress(content.toString()).length(), counter.length());
+            }
+        }
+    }
+
+    @Test
+    void testResources() throws Exception {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(Paths.get("src/test/resources"))) {
+            files = stream.filter(path -> path.toString().endsWith(".java")).toList();
+        }
+        for (Path file : files) {
+            assertSame(Files.readString(file));
+        }
+        System.out.println("比较了 " + files.size() + " 个文件");
+    }
+}